@@ -0,0 +1,257 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Node;
+import hudson.model.Project;
+import hudson.model.Queue;
+import hudson.model.listeners.ItemListener;
+import hudson.model.queue.CauseOfBlockage;
+import hudson.model.queue.QueueTaskDispatcher;
+import hudson.util.FormValidation;
+import jenkins.model.GlobalConfiguration;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.verb.POST;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steers builds of jobs running Provar to the agents where they ran before, in <em>Manage Jenkins » System</em>.
+ * Such an agent already has the Provar installation and the Salesforce metadata cache of the target environment
+ * in the workspace of the job, so the build skips installing Provar and downloading the metadata. A build waits
+ * up to the configured time for one of these agents, then takes any agent it is eligible for.
+ */
+@Extension
+@Symbol("provarAgentAffinity")
+public class ProvarAgentAffinity extends GlobalConfiguration {
+
+    // caches not used for longer are considered cold, the agent may have cleaned up its workspaces
+    static final long MAX_AGE = TimeUnit.DAYS.toMillis(SystemProperties.getLong(ProvarAgentAffinity.class.getName() + ".maxAgeDays", 14L));
+    // agents remembered per job
+    static final int MAX_CACHES = 20;
+
+    // seconds a build waits for an agent with warm caches, 0 to not wait
+    private int maxWait;
+    // agents with warm caches by full name of the job, most recent first
+    private final Map<String, List<Cache>> caches = new HashMap<>();
+
+    public ProvarAgentAffinity() {
+        load();
+    }
+
+    @NonNull
+    static ProvarAgentAffinity get() {
+        return ExtensionList.lookupSingleton(ProvarAgentAffinity.class);
+    }
+
+    public int getMaxWait() { return maxWait; }
+
+    @DataBoundSetter
+    public void setMaxWait(int maxWait) {
+        this.maxWait = Math.max(maxWait, 0);
+        save();
+    }
+
+    @POST
+    public FormValidation doCheckMaxWait(@QueryParameter String value) {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        try {
+            if (Integer.parseInt(value.trim()) < 0) {
+                return FormValidation.error(Messages.ProvarAutomation_InvalidAffinityWait());
+            }
+        } catch (NumberFormatException e) {
+            return FormValidation.error(Messages.ProvarAutomation_InvalidAffinityWait());
+        }
+        return FormValidation.ok();
+    }
+
+    /**
+     * Records whether a build of the job left warm caches on the agent, for the installation and the environment it ran with.
+     */
+    void record(@NonNull Job<?, ?> job, @NonNull String node, @NonNull String installation, @NonNull String environment, boolean warm) {
+        Cache cache = new Cache(node, installation, environment, System.currentTimeMillis());
+        synchronized (this) {
+            List<Cache> list = caches.computeIfAbsent(job.getFullName(), k -> new ArrayList<>());
+            list.removeIf(c -> c.matches(node, installation, environment) || c.isStale(cache.time));
+            if (warm) {
+                list.add(0, cache);
+                if (list.size() > MAX_CACHES) {
+                    list.subList(MAX_CACHES, list.size()).clear();
+                }
+            }
+            if (list.isEmpty()) {
+                caches.remove(job.getFullName());
+            }
+            // saved while holding the lock, so the caches do not change while they are written
+            save();
+        }
+    }
+
+    /**
+     * The agents where the job has warm caches for the installation and the environment of its next build: those of its
+     * Provar build step, or else those it ran with last.
+     */
+    @NonNull
+    List<String> warmNodes(@NonNull Job<?, ?> job) {
+        String installation = null;
+        String environment = null;
+        if (job instanceof Project) {
+            ProvarAutomation step = ((Project<?, ?>) job).getBuildersList().get(ProvarAutomation.class);
+            if (step != null) {
+                installation = Objects.toString(step.getProvarAutomationName(), "");
+                environment = Objects.toString(step.getEnvironment(), "");
+            }
+        }
+        long now = System.currentTimeMillis();
+        List<String> nodes = new ArrayList<>();
+        synchronized (this) {
+            List<Cache> list = caches.get(job.getFullName());
+            if (list == null || list.isEmpty()) {
+                return nodes;
+            }
+            if (installation == null) {
+                installation = list.get(0).installation;
+                environment = list.get(0).environment;
+            }
+            for (Cache c : list) {
+                if (!c.isStale(now) && c.installation.equals(installation) && c.environment.equals(environment)) {
+                    nodes.add(c.node);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    private synchronized void renamed(@NonNull String oldFullName, @NonNull String newFullName) {
+        List<Cache> list = caches.remove(oldFullName);
+        if (list != null) {
+            caches.put(newFullName, list);
+            save();
+        }
+    }
+
+    private synchronized void deleted(@NonNull String fullName) {
+        if (caches.remove(fullName) != null) {
+            save();
+        }
+    }
+
+    /**
+     * Warm caches of a job on an agent.
+     */
+    static final class Cache {
+        private final String node;
+        private final String installation;
+        private final String environment;
+        private final long time;
+
+        Cache(@NonNull String node, @NonNull String installation, @NonNull String environment, long time) {
+            this.node = node;
+            this.installation = installation;
+            this.environment = environment;
+            this.time = time;
+        }
+
+        boolean matches(String node, String installation, String environment) {
+            return this.node.equals(node) && this.installation.equals(installation) && this.environment.equals(environment);
+        }
+
+        boolean isStale(long now) {
+            return now - time > MAX_AGE;
+        }
+    }
+
+    /**
+     * Keeps a buildable item of a job with warm caches off the other agents, while one of those agents could take it and
+     * the item did not wait longer than configured. Pipeline jobs are matched by their {@code node} blocks.
+     */
+    @Extension
+    public static class Dispatcher extends QueueTaskDispatcher {
+
+        @Override
+        @CheckForNull
+        public CauseOfBlockage canTake(Node node, Queue.BuildableItem item) {
+            ProvarAgentAffinity affinity = get();
+            long wait = TimeUnit.SECONDS.toMillis(affinity.getMaxWait());
+            long waited = System.currentTimeMillis() - item.buildableStartMilliseconds;
+            if (wait == 0 || waited >= wait) {
+                return null;
+            }
+            Queue.Task owner = item.task.getOwnerTask();
+            if (!(owner instanceof Job)) {
+                return null;
+            }
+            List<String> warm = affinity.warmNodes((Job<?, ?>) owner);
+            if (warm.isEmpty() || warm.contains(node.getNodeName())) {
+                return null;
+            }
+            Jenkins jenkins = Jenkins.get();
+            for (String name : warm) {
+                Node candidate = name.isEmpty() ? jenkins : jenkins.getNode(name);
+                Computer computer = candidate != null ? candidate.toComputer() : null;
+                if (computer != null && computer.isOnline() && computer.isAcceptingTasks() && candidate.canTake(item) == null) {
+                    return CauseOfBlockage.fromMessage(Messages._ProvarAutomation_WaitingForWarmAgent(
+                            computer.getDisplayName(), Util.getTimeSpanString(wait - waited)));
+                }
+            }
+            // none of the agents with warm caches can take the item, so any agent will do
+            return null;
+        }
+    }
+
+    /**
+     * Follows jobs that are renamed, moved or deleted.
+     */
+    @Extension
+    public static class Jobs extends ItemListener {
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            get().renamed(oldFullName, newFullName);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            get().deleted(item.getFullName());
+        }
+    }
+}
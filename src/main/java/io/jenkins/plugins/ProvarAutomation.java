@@ -24,22 +24,31 @@
 
 package io.jenkins.plugins;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.*;
+import hudson.matrix.MatrixAggregatable;
+import hudson.matrix.MatrixAggregator;
+import hudson.matrix.MatrixBuild;
 import hudson.model.*;
 import hudson.remoting.VirtualChannel;
+import hudson.scm.ChangeLogSet;
 import hudson.slaves.NodeSpecific;
+import hudson.slaves.WorkspaceList;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
-import hudson.tasks._ant.AntConsoleAnnotator;
 import hudson.tools.*;
 import hudson.util.*;
 import jenkins.model.Jenkins;
+import jenkins.scm.RunWithSCM;
 import jenkins.security.MasterToSlaveCallable;
+import jenkins.util.Timer;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.verb.POST;
@@ -47,9 +56,13 @@ import org.kohsuke.stapler.verb.POST;
 import javax.servlet.ServletException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
-public class ProvarAutomation extends Builder {
+public class ProvarAutomation extends Builder implements MatrixAggregatable {
 
     /**
      * Identifies {@link ProvarAutomationInstallation} to be used.
@@ -90,6 +103,35 @@ public class ProvarAutomation extends Builder {
     private final String projectName;
     @NonNull
     private final String licensePath;
+    // number of shards the test folder is split into, 1 (or 0 for older configurations) runs everything
+    private int shardCount = DescriptorImpl.defaultShardCount;
+    // 1-based shard run by this step, falls back to the PROVAR_SHARD variable when empty
+    private String shardIndex;
+    private boolean persistMetadataCache;
+    // shared path (as seen from the agent) for metadata cache snapshots, the controller is used when empty
+    private String metadataCacheStore;
+    private boolean cacheCompiledProject;
+    private boolean affectedTestsOnly;
+    // number of times failed test cases are run again, 0 does not rerun
+    private int rerunFailedTests;
+    // Provar is stopped once this many test cases failed, 0 for no limit
+    private int failFastFailures;
+    // or once this percentage of the first failFastWindow test cases failed, 0 for no limit
+    private int failFastPercent;
+    private int failFastWindow = DescriptorImpl.defaultFailFastWindow;
+    // number of Results folders kept in the project, 0 keeps all
+    private int resultsToKeep;
+    // total size in MB the Results folders may take, 0 for no limit
+    private int resultsSizeLimit;
+    private boolean compressOldResults;
+    private boolean warmRunner;
+    // the output goes to a compressed log archived with the build, the console only gets the test case events
+    private boolean offloadDetailedLog;
+    private boolean publishResults;
+    // browsers run concurrently with the main one, separated by commas
+    private String additionalBrowsers;
+    // environments run concurrently with the main one, separated by commas or new lines
+    private String additionalEnvironments;
 
     @DataBoundConstructor
     public ProvarAutomation(@NonNull String provarAutomationName,
@@ -157,10 +199,343 @@ public class ProvarAutomation extends Builder {
     @NonNull
     public String getLicensePath() { return licensePath; }
 
+    public int getShardCount() { return shardCount; }
+
+    @DataBoundSetter
+    public void setShardCount(int shardCount) {
+        this.shardCount = Math.max(shardCount, 1);
+    }
+
+    public String getShardIndex() { return shardIndex; }
+
+    @DataBoundSetter
+    public void setShardIndex(String shardIndex) {
+        this.shardIndex = Util.fixEmptyAndTrim(shardIndex);
+    }
+
+    public boolean isPersistMetadataCache() { return persistMetadataCache; }
+
+    @DataBoundSetter
+    public void setPersistMetadataCache(boolean persistMetadataCache) {
+        this.persistMetadataCache = persistMetadataCache;
+    }
+
+    public String getMetadataCacheStore() { return metadataCacheStore; }
+
+    @DataBoundSetter
+    public void setMetadataCacheStore(String metadataCacheStore) {
+        this.metadataCacheStore = Util.fixEmptyAndTrim(metadataCacheStore);
+    }
+
+    public boolean isCacheCompiledProject() { return cacheCompiledProject; }
+
+    @DataBoundSetter
+    public void setCacheCompiledProject(boolean cacheCompiledProject) {
+        this.cacheCompiledProject = cacheCompiledProject;
+    }
+
+    public boolean isAffectedTestsOnly() { return affectedTestsOnly; }
+
+    @DataBoundSetter
+    public void setAffectedTestsOnly(boolean affectedTestsOnly) {
+        this.affectedTestsOnly = affectedTestsOnly;
+    }
+
+    public int getRerunFailedTests() { return rerunFailedTests; }
+
+    @DataBoundSetter
+    public void setRerunFailedTests(int rerunFailedTests) {
+        this.rerunFailedTests = Math.max(rerunFailedTests, 0);
+    }
+
+    public int getFailFastFailures() { return failFastFailures; }
+
+    @DataBoundSetter
+    public void setFailFastFailures(int failFastFailures) {
+        this.failFastFailures = Math.max(failFastFailures, 0);
+    }
+
+    public int getFailFastPercent() { return failFastPercent; }
+
+    @DataBoundSetter
+    public void setFailFastPercent(int failFastPercent) {
+        this.failFastPercent = Math.min(Math.max(failFastPercent, 0), 100);
+    }
+
+    public int getFailFastWindow() { return failFastWindow; }
+
+    @DataBoundSetter
+    public void setFailFastWindow(int failFastWindow) {
+        this.failFastWindow = Math.max(failFastWindow, 1);
+    }
+
+    public int getResultsToKeep() { return resultsToKeep; }
+
+    @DataBoundSetter
+    public void setResultsToKeep(int resultsToKeep) {
+        this.resultsToKeep = Math.max(resultsToKeep, 0);
+    }
+
+    public int getResultsSizeLimit() { return resultsSizeLimit; }
+
+    @DataBoundSetter
+    public void setResultsSizeLimit(int resultsSizeLimit) {
+        this.resultsSizeLimit = Math.max(resultsSizeLimit, 0);
+    }
+
+    public boolean isCompressOldResults() { return compressOldResults; }
+
+    @DataBoundSetter
+    public void setCompressOldResults(boolean compressOldResults) {
+        this.compressOldResults = compressOldResults;
+    }
+
+    public String getAdditionalBrowsers() { return additionalBrowsers; }
+
+    @DataBoundSetter
+    public void setAdditionalBrowsers(String additionalBrowsers) {
+        this.additionalBrowsers = Util.fixEmptyAndTrim(additionalBrowsers);
+    }
+
+    /**
+     * The browser, followed by the additional browsers.
+     */
+    @NonNull
+    List<Browser> getBrowsers() throws AbortException {
+        Set<Browser> browsers = new LinkedHashSet<>();
+        browsers.add(browser);
+        for (String name : Util.fixNull(additionalBrowsers).split("[,\\s]+")) {
+            if (name.isEmpty()) {
+                continue;
+            }
+            try {
+                browsers.add(Browser.valueOf(name));
+            } catch (IllegalArgumentException e) {
+                throw new AbortException(Messages.ProvarAutomation_UnknownBrowser(name, Arrays.toString(Browser.values())));
+            }
+        }
+        return new ArrayList<>(browsers);
+    }
+
+    public String getAdditionalEnvironments() { return additionalEnvironments; }
+
+    @DataBoundSetter
+    public void setAdditionalEnvironments(String additionalEnvironments) {
+        this.additionalEnvironments = Util.fixEmptyAndTrim(additionalEnvironments);
+    }
+
+    /**
+     * The environment, followed by the additional environments, with the variables of the build expanded.
+     */
+    @NonNull
+    List<String> getEnvironments(@NonNull EnvVars env) {
+        Set<String> environments = new LinkedHashSet<>();
+        environments.add(env.expand(Util.fixNull(environment)));
+        for (String name : Util.fixNull(additionalEnvironments).split("[,\\n]+")) {
+            String expanded = env.expand(name.trim());
+            if (!expanded.isEmpty()) {
+                environments.add(expanded);
+            }
+        }
+        return new ArrayList<>(environments);
+    }
+
+    /**
+     * Number of runs of Provar going concurrently, one per browser and environment, each holding a license seat.
+     */
+    int getRuns(@NonNull EnvVars env) throws AbortException {
+        return getBrowsers().size() * getEnvironments(env).size();
+    }
+
+    /**
+     * The execution license path with the variables of the build expanded, or the default one if empty.
+     */
+    @NonNull
+    String getLicensePath(@NonNull EnvVars env) {
+        String expanded = env.expand(licensePath);
+        return expanded.isEmpty() ? DescriptorImpl.defaultLicensePath : expanded;
+    }
+
+    public boolean isWarmRunner() { return warmRunner; }
+
+    @DataBoundSetter
+    public void setWarmRunner(boolean warmRunner) {
+        this.warmRunner = warmRunner;
+    }
+
+    public boolean isOffloadDetailedLog() { return offloadDetailedLog; }
+
+    @DataBoundSetter
+    public void setOffloadDetailedLog(boolean offloadDetailedLog) {
+        this.offloadDetailedLog = offloadDetailedLog;
+    }
+
+    public boolean isPublishResults() { return publishResults; }
+
+    @DataBoundSetter
+    public void setPublishResults(boolean publishResults) {
+        this.publishResults = publishResults;
+    }
+
     @Override
     public boolean perform(AbstractBuild<?,?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
         FilePath workspaceFilePath = build.getWorkspace();
+        FilePath moduleRoot = workspaceFilePath != null ? build.getModuleRoot() : null;
         EnvVars env = build.getEnvironment(listener);
+        String licensePath = getLicensePath(env);
+        // one license seat per concurrent run, held across reruns; taken before the up-front compile, which runs Provar already
+        ProvarLicenseSeats.Lease lease = ProvarLicenseSeats.get().acquire(build, licensePath, getRuns(env), listener);
+        List<ProvarInvocation> invocations;
+        try {
+            invocations = prepare(build, workspaceFilePath, moduleRoot, env,
+                    build.getBuildVariables(), build.getSensitiveBuildVariables(), launcher, listener);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            if (lease != null) {
+                lease.release();
+            }
+            throw e;
+        }
+        if (invocations.isEmpty()) {
+            if (lease != null) {
+                lease.release();
+            }
+            return true;
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            int[] exitCodes = new int[invocations.size()];
+            List<ProvarConsoleAnnotator> annotators = new ArrayList<>();
+            ScheduledFuture<?> polling = Timer.get().scheduleWithFixedDelay(() -> invocations.forEach(i -> i.getWatcher().pollQuietly()),
+                    RESULTS_POLL_INTERVAL, RESULTS_POLL_INTERVAL, TimeUnit.SECONDS);
+            try {
+                if (lease != null) {
+                    invocations.get(0).getMetrics().add(ProvarMetrics.Phase.LicenseWait, lease.getWaited());
+                }
+                for (ProvarInvocation invocation : invocations) {
+                    // tell the output of concurrent browsers apart
+                    annotators.add(new ProvarConsoleAnnotator(listener.getLogger(),
+                            invocations.size() > 1 ? "[" + invocation.getGroup() + "] " : null, invocation.getFailFast()));
+                }
+                // Launch every invocation, then the ones that rerun their failed test cases, until none is left
+                List<Integer> pending = new ArrayList<>();
+                for (int i = 0; i < invocations.size(); i++) {
+                    pending.add(i);
+                }
+                while (!pending.isEmpty()) {
+                    List<Proc> procs = new ArrayList<>();
+                    try {
+                        for (int i : pending) {
+                            ProvarInvocation invocation = invocations.get(i);
+                            invocation.started();
+                            // Skip the JVM and Ant startup on a warm runner of the agent when one is free
+                            // The warm runner cannot be stopped on its own, so it is not used with failure thresholds,
+                            // and it logs to the console, so it is not used with a detailed log either
+                            Integer warm = null;
+                            Node builtOn = build.getBuiltOn();
+                            FilePath agentRoot = builtOn != null ? builtOn.getRootPath() : null;
+                            if (warmRunner && agentRoot != null && invocations.size() == 1 && invocation.getFailFast() == null
+                                    && !invocation.isLogOffloaded()) {
+                                warm = ProvarRunner.run(agentRoot, build.getParent().getFullName(), invocation, annotators.get(i), listener.getLogger());
+                            }
+                            if (warm != null) {
+                                exitCodes[i] = warm;
+                                procs.add(null);
+                                continue;
+                            }
+                            ArgumentListBuilder args = invocation.getArgs();
+                            if(!launcher.isUnix()) {
+                                args = toWindowsCommand(args.toWindowsCommand());
+                            }
+                            Proc proc = launcher.launch().cmds(args).envs(invocation.getEnv()).stdout(annotators.get(i))
+                                    .pwd(invocation.getWorkingDirectory()).start();
+                            procs.add(proc);
+                            ProvarFailFast failFast = invocation.getFailFast();
+                            if (failFast != null) {
+                                // kill the process tree off the thread copying the output, which the kill waits for
+                                failFast.onTrip(() -> Timer.get().submit(() -> {
+                                    if (failFast.stop()) {
+                                        listener.getLogger().println(Messages.ProvarAutomation_FailFast(failFast.getReason()));
+                                        try {
+                                            proc.kill();
+                                        } catch (IOException e) {
+                                            listener.getLogger().println("Unable to stop Provar: " + e.getMessage());
+                                        } catch (InterruptedException e) {
+                                            Thread.currentThread().interrupt();
+                                        }
+                                    }
+                                }));
+                            }
+                        }
+                        for (int k = 0; k < procs.size(); k++) {
+                            if (procs.get(k) != null) {
+                                exitCodes[pending.get(k)] = procs.get(k).join();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        for (Proc proc : procs) {
+                            if (proc != null) {
+                                proc.kill();
+                            }
+                        }
+                        throw e;
+                    }
+                    List<Integer> reruns = new ArrayList<>();
+                    for (int i : pending) {
+                        annotators.get(i).forceEol();
+                        if (invocations.get(i).rerun(exitCodes[i], listener)) {
+                            reruns.add(i);
+                        }
+                    }
+                    pending = reruns;
+                }
+            } finally {
+                if (lease != null) {
+                    lease.release();
+                }
+                polling.cancel(false);
+                for (ProvarConsoleAnnotator aca : annotators) {
+                    aca.forceEol();
+                }
+                for (ProvarInvocation invocation : invocations) {
+                    invocation.archiveLog(build, listener);
+                    invocation.cleanUp();
+                }
+            }
+            boolean success = true;
+            for (int i = 0; i < invocations.size(); i++) {
+                invocations.get(i).measured(annotators.get(i));
+                success &= invocations.get(i).finish(build, exitCodes[i], listener);
+            }
+            return success;
+        } catch (IOException e) {
+            Util.displayIOException(e,listener);
+
+            String errorMessage = Messages.ProvarAutomation_AntExecutionFailed();
+            if(getProvar() == null && (System.currentTimeMillis()-startTime)<1000) {
+                if(getDescriptor().getInstallations() == null)
+                    // looks like the user didn't configure any Ant installation
+                    errorMessage += Messages.ProvarAutomation_GlobalConfigNeeded();
+                else
+                    // There are Ant installations configured but the project didn't pick it
+                    errorMessage += Messages.ProvarAutomation_ProjectConfigNeeded();
+            }
+            throw new AbortException(errorMessage);
+        }
+    }
+
+    /**
+     * Resolves the installation, the build file and the tests to run, and prepares the workspace for
+     * the Ant invocation. Shared by {@link #perform} and {@link ProvarAutomationStep}.
+     *
+     * @param buildVariables variables passed to Ant as properties
+     * @return the invocations to launch concurrently, one per browser, or none if there is nothing to run
+     */
+    @NonNull
+    List<ProvarInvocation> prepare(@NonNull Run<?, ?> build, @CheckForNull FilePath workspaceFilePath, @CheckForNull FilePath moduleRoot,
+                             @NonNull EnvVars env, @NonNull Map<String, String> buildVariables, @NonNull Set<String> sensitiveBuildVariables,
+                             @NonNull Launcher launcher, @NonNull TaskListener listener) throws InterruptedException, IOException {
+        // the variables set below are all an invocation keeps, see ProvarInvocation#restoreEnv
+        EnvVars base = new EnvVars(env);
         String buildFile = env.expand(this.buildFile);
 
         // If (for some reason) they get rid of the build file parameter, let's give em the default
@@ -177,48 +552,282 @@ public class ProvarAutomation extends Builder {
         listener.getLogger().println("Executing test plan: " + testPlan);
         listener.getLogger().println("Executing test folder: " + testFolder);
         listener.getLogger().println("Target environment: " + environment);
+        if (additionalEnvironments != null) {
+            listener.getLogger().println("Additional environments: " + additionalEnvironments.replace('\n', ','));
+        }
         listener.getLogger().println("Target browser: " + browser);
         if (secretsPassword.getPlainText() != null) {
             listener.getLogger().println("Project is encrypted! Thank you for being secure.");
         }
         listener.getLogger().println("Salesforce Metadata Cache Setting: " + salesforceMetadataCacheSetting);
         listener.getLogger().println("Results Path Setting: " + resultsPathSetting);
-        String licensePath = env.expand(this.licensePath);
-        if (licensePath.isEmpty()) {
-            licensePath = DescriptorImpl.defaultLicensePath;
-        }
+        String licensePath = getLicensePath(env);
         listener.getLogger().println("Execution license path being used: " + licensePath);
 
         listener.getLogger().println("Workspace: " + workspaceFilePath);
         ArgumentListBuilder args = new ArgumentListBuilder();
+        ProvarMetrics metrics = new ProvarMetrics();
 
-        // Allow empty build parameters to be used in property replacements.
-        // The env.override/overrideAll methods remove the property if it's an empty string.
-        for (Map.Entry<String, String> e : build.getBuildVariables().entrySet()) {
-            if (e.getValue() != null && e.getValue().length() == 0) {
-                env.put(e.getKey(), e.getValue());
-            } else {
-                env.override(e.getKey(), e.getValue());
-            }
-        }
+        putBuildVariables(env, buildVariables);
 
+        if (workspaceFilePath == null) {
+            throw new AbortException("Workspace is not available. Agent may be disconnected.");
+        }
+        VirtualChannel channel = launcher.getChannel();
+        if (channel == null) {
+            throw new AbortException(Messages.ProvarAutomation_NodeOffline());
+        }
         ProvarAutomationInstallation pi = getProvar();
-        if (pi == null) {
-            args.add(launcher.isUnix() ? "ant" : "ant.bat");
-        } else {
-            Node node = Computer.currentComputer().getNode();
+        Node node = null;
+        String exe = null;
+        long phase = System.currentTimeMillis();
+        Computer computer = workspaceFilePath.toComputer();
+        if (pi != null) {
+            node = computer != null ? computer.getNode() : null;
             if (node == null) {
                 throw new AbortException(Messages.ProvarAutomation_NodeOffline());
             }
-            pi = pi.forNode(node, listener);
+            pi = (ProvarAutomationInstallation) ProvarToolCache.forNode(pi, node, listener);
             pi = pi.forEnvironment(env);
-            String exe = pi.getExecutable(launcher);
+            exe = ProvarToolCache.executable(pi, node);
+            metrics.count(exe != null ? ProvarMetrics.Counter.ToolCacheHits : ProvarMetrics.Counter.ToolCacheMisses, 1);
+        }
+        metrics.time(ProvarMetrics.Phase.ToolResolution, phase);
+
+        // Resolve the build file, check the license path and the installation, in one round trip to the agent
+        phase = System.currentTimeMillis();
+        ProvarPreflight.Result preflight = channel.call(new ProvarPreflight(moduleRoot != null ? moduleRoot.getRemote() : workspaceFilePath.getRemote(), workspaceFilePath.getRemote(),
+                env.expand(projectName), buildFile, licensePath, pi != null && exe == null ? pi.getHome() : null));
+        metrics.time(ProvarMetrics.Phase.BuildFileResolution, phase);
+        listener.getLogger().println("Agent: " + preflight);
+        if (pi != null && exe == null) {
+            exe = preflight.getExecutable();
             if (exe == null) {
                 throw new AbortException(Messages.ProvarAutomation_NotAProvarDirectory(pi.getName()));
             }
-            args.add(launcher.isUnix() ? "ant" : "ant.bat");
+            ProvarToolCache.putExecutable(pi, node, exe);
+        }
+        if (!preflight.isLicensePathExists()) {
+            listener.getLogger().println("WARNING: The execution license path " + licensePath + " does not exist on this agent");
+        }
+        args.add(launcher.isUnix() ? "ant" : "ant.bat");
+
+        List<String> environments = getEnvironments(env);
+        FilePath buildFilePath = new FilePath(channel, preflight.getBuildFile());
+        if (!preflight.isBuildFileFound()) {
+            listener.getLogger().println("Unable to find the build file in the ANT folder of " + projectName);
+        }
+        listener.getLogger().println("BUILD FILE PATH:" + buildFilePath);
+
+        if(buildFile != null) {
+            args.add("-file", buildFilePath.getName());
+        }
+
+        // The build file narrows its test fileset with the TEST_CASES_FILE includesfile, which selects
+        // everything unless this step runs only the affected test cases or one shard of the test folder
+        FilePath projectPath = workspaceFilePath.child(env.expand(projectName));
+        ProvarFolderIndex.refreshLater(build.getParent(), env.expand(projectName), projectPath);
+        String shardLabel = null;
+        String includes = ProvarTestShards.includeAll();
+        if ((shardCount > 1 || affectedTestsOnly || rerunFailedTests > 0) && testFolder.isEmpty()) {
+            throw new AbortException(Messages.ProvarAutomation_TestSelectionNeedsTestFolder());
+        }
+        List<String> testCases = null;
+        if (affectedTestsOnly) {
+            testCases = affectedTestCases(build, env.expand(projectName), projectPath, listener);
+        }
+        if (shardCount > 1) {
+            int index = resolveShardIndex(env);
+            if (testCases == null) {
+                testCases = testFolderPath(projectPath).act(new ProvarTestShards.ListTestCases());
+            }
+            Map<String, Long> durations = ProvarTestTimings.below(ProvarTestTimings.history(build),
+                    testFolder.equalsIgnoreCase("All") ? "" : testFolder);
+            List<String> shard = ProvarTestShards.shard(testCases, shardCount, index, durations);
+            shardLabel = "Shard " + index + "/" + shardCount;
+            listener.getLogger().println(shardLabel + ": running " + shard.size() + " of " + testCases.size() + " test cases, estimated duration "
+                    + Util.getTimeSpanString(ProvarTestShards.estimate(shard, durations)));
+            testCases = shard;
+        }
+        if (testCases != null) {
+            if (testCases.isEmpty()) {
+                listener.getLogger().println("No test cases to run.");
+                return Collections.emptyList();
+            }
+            includes = ProvarTestShards.includes(testCases);
+        }
+        FilePath tempDir = WorkspaceList.tempDir(workspaceFilePath);
+        if (tempDir == null) {
+            tempDir = workspaceFilePath;
+        }
+        tempDir.mkdirs();
+        FilePath includesFile = tempDir.createTextTempFile("provar-includes", ".txt", includes);
+        env.put("TEST_CASES_FILE", includesFile.getRemote());
+
+        // Reuse the output of the last compile if the project inputs and the installation are unchanged
+        ProvarCompileCache compileCache = null;
+        boolean skipCompile = false;
+        if (cacheCompiledProject) {
+            phase = System.currentTimeMillis();
+            compileCache = new ProvarCompileCache(projectPath, build.getParent().getFullName(),
+                    pi == null ? "" : pi.getName() + "\n" + pi.getHome());
+            skipCompile = compileCache.prepare(listener);
+            metrics.time(ProvarMetrics.Phase.Compile, phase);
+            metrics.count(skipCompile ? ProvarMetrics.Counter.CompileCacheHits : ProvarMetrics.Counter.CompileCacheMisses, 1);
+            if (skipCompile) {
+                args.add("-D" + ProvarCompileCache.SKIP_PROPERTY + "=true");
+            }
+        }
+        addAntVariables(args, env, workspaceFilePath, environments.get(0), licensePath, buildVariables, sensitiveBuildVariables);
+
+        if(pi != null) {
+            pi.buildEnvVars(env);
+        }
+
+        // Several browsers and environments run concurrently from one compile, so compile up front instead of in every invocation
+        List<Browser> browsers = getBrowsers();
+        int runs = getRuns(env);
+        if (runs > 1 && !skipCompile) {
+            listener.getLogger().println("Compiling the project once for " + runs + " concurrent runs");
+            phase = System.currentTimeMillis();
+            ArgumentListBuilder compileArgs = args.clone().add(COMPILE_TARGET);
+            if (!launcher.isUnix()) {
+                compileArgs = toWindowsCommand(compileArgs.toWindowsCommand());
+            }
+            int r = launcher.launch().cmds(compileArgs).envs(env).stdout(new ProvarConsoleAnnotator(listener.getLogger()))
+                    .pwd(buildFilePath.getParent()).join();
+            metrics.time(ProvarMetrics.Phase.Compile, phase);
+            if (r != 0) {
+                includesFile.delete();
+                throw new AbortException(Messages.ProvarAutomation_CompileFailed());
+            }
+            args.add("-D" + ProvarCompileCache.SKIP_PROPERTY + "=true");
         }
 
+        // Seed the workspace with the last snapshot of the metadata cache, unless it is going to be reloaded anyway
+        ProvarMetadataCache metadataCache = null;
+        FilePath sharedCacheDir = projectPath.child(ProvarMetadataCache.CACHE_FOLDER);
+        FilePath metadataStore = ProvarMetadataCache.store(env.expand(metadataCacheStore), workspaceFilePath);
+        if (persistMetadataCache) {
+            metadataCache = new ProvarMetadataCache(metadataStore, env.expand(projectName), environments.get(0));
+            if (salesforceMetadataCacheSetting != SalesforceMetadataCacheSettings.Reload) {
+                phase = System.currentTimeMillis();
+                try {
+                    boolean restored = metadataCache.restore(sharedCacheDir, listener);
+                    metrics.count(restored ? ProvarMetrics.Counter.MetadataCacheHits : ProvarMetrics.Counter.MetadataCacheMisses, 1);
+                } catch (IOException e) {
+                    listener.getLogger().println("Unable to restore the Salesforce metadata cache: " + e.getMessage());
+                }
+                metrics.time(ProvarMetrics.Phase.MetadataCacheLoad, phase);
+            }
+        }
+
+        // Follow the Results folder while Provar runs, so the build page shows the outcomes so far
+        ProvarResultsAction resultsAction = ProvarResultsAction.of(build);
+        ProvarResultsRetention retention = new ProvarResultsRetention(resultsToKeep, resultsSizeLimit * 1024L * 1024L, compressOldResults);
+        int expected = testCases != null ? testCases.size() : -1;
+        if (runs == 1) {
+            ProvarResultsWatcher watcher = new ProvarResultsWatcher(projectPath.child("ANT"), preflight.getAgentTime(), shardLabel,
+                    expected, resultsAction);
+            ProvarInvocation invocation = new ProvarInvocation(args, base, env, buildFilePath.getParent(), includesFile, shardLabel,
+                    watcher, retention, compileCache, metadataCache, sharedCacheDir);
+            invocation.setReruns(rerunFailedTests, tempDir);
+            invocation.setFailFast(ProvarFailFast.of(failFastFailures, failFastPercent, failFastWindow));
+            invocation.setPublishResults(publishResults);
+            if (offloadDetailedLog) {
+                invocation.offloadLog(tempDir);
+            }
+            if (computer != null) {
+                invocation.setAffinity(computer.getName(), provarAutomationName, environment);
+            }
+            invocation.getMetrics().add(metrics);
+            return Collections.singletonList(invocation);
+        }
+
+        // One invocation per environment and browser, each with its own Results folders and metadata cache. The ones of the
+        // main environment are seeded from the shared metadata cache, the others from the snapshot of their environment.
+        List<ProvarInvocation> invocations = new ArrayList<>();
+        for (String e : environments) {
+            boolean main = invocations.isEmpty();
+            ProvarMetadataCache environmentCache = main ? metadataCache
+                    : persistMetadataCache ? new ProvarMetadataCache(metadataStore, env.expand(projectName), e) : null;
+            boolean firstOfEnvironment = true;
+            for (Browser b : browsers) {
+                String environmentName = e.isEmpty() ? "Default" : e;
+                String key = environments.size() == 1 ? b.name() : browsers.size() == 1 ? environmentName : environmentName + " " + b.name();
+                String folder = key.replaceAll("[^A-Za-z0-9._-]", "_");
+                FilePath antDir = projectPath.child("ANT").child(folder);
+                FilePath cacheDir = projectPath.child(ProvarMetadataCache.CACHE_FOLDER + "-" + folder);
+                if (main) {
+                    if (sharedCacheDir.exists()) {
+                        sharedCacheDir.copyRecursiveTo(cacheDir);
+                    }
+                } else if (environmentCache != null && salesforceMetadataCacheSetting != SalesforceMetadataCacheSettings.Reload) {
+                    try {
+                        boolean restored = environmentCache.restore(cacheDir, listener);
+                        metrics.count(restored ? ProvarMetrics.Counter.MetadataCacheHits : ProvarMetrics.Counter.MetadataCacheMisses, 1);
+                    } catch (IOException ex) {
+                        listener.getLogger().println("Unable to restore the Salesforce metadata cache of " + environmentName + ": " + ex.getMessage());
+                    }
+                }
+                ArgumentListBuilder runArgs = args.clone();
+                runArgs.add("-D" + RESULTS_PROPERTY + "=" + antDir.child("Results").getRemote());
+                runArgs.add("-D" + CACHE_PATH_PROPERTY + "=" + cacheDir.getRemote());
+                EnvVars runEnv = new EnvVars(env);
+                runEnv.put("BROWSER", b.name());
+                runEnv.put("ENVIRONMENT", e);
+                String group = shardLabel == null ? key : shardLabel + " " + key;
+                ProvarResultsWatcher watcher = new ProvarResultsWatcher(antDir, preflight.getAgentTime(), group, expected, resultsAction);
+                boolean first = invocations.isEmpty();
+                // the first run owns the shared files: the test selection and the compiled output, the first of each
+                // environment its metadata snapshot
+                ProvarInvocation invocation = new ProvarInvocation(runArgs, base, runEnv, buildFilePath.getParent(), first ? includesFile : null,
+                        group, watcher, retention, first ? compileCache : null, firstOfEnvironment ? environmentCache : null, cacheDir);
+                invocation.setReruns(rerunFailedTests, tempDir);
+                invocation.setFailFast(ProvarFailFast.of(failFastFailures, failFastPercent, failFastWindow));
+                invocation.setPublishResults(publishResults);
+                if (offloadDetailedLog) {
+                    invocation.offloadLog(tempDir);
+                }
+                invocations.add(invocation);
+                firstOfEnvironment = false;
+            }
+        }
+        invocations.get(0).getMetrics().add(metrics);
+        if (computer != null) {
+            invocations.get(0).setAffinity(computer.getName(), provarAutomationName, environment);
+        }
+        if (environments.size() == 1) {
+            listener.getLogger().println("Running " + browsers.size() + " browsers concurrently: " + browsers);
+        } else {
+            listener.getLogger().println("Running " + invocations.size() + " runs concurrently, environments " + environments + " with browsers " + browsers);
+        }
+        return invocations;
+    }
+
+    /**
+     * Puts the build variables into the environment. Empty ones are kept, so they can be used in property replacements,
+     * while {@link EnvVars#override} would remove them.
+     */
+    static void putBuildVariables(@NonNull EnvVars env, @NonNull Map<String, String> buildVariables) {
+        for (Map.Entry<String, String> e : buildVariables.entrySet()) {
+            if (e.getValue() != null && e.getValue().length() == 0) {
+                env.put(e.getKey(), e.getValue());
+            } else {
+                env.override(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Sets the variables the build file reads, then passes the build variables and the secrets password to Ant as
+     * properties, masking the sensitive ones.
+     *
+     * @param environment the main environment, the concurrent runs of other environments override it
+     */
+    void addAntVariables(@NonNull ArgumentListBuilder args, @NonNull EnvVars env, @NonNull FilePath workspaceFilePath,
+                         @NonNull String environment, @NonNull String licensePath, @NonNull Map<String, String> buildVariables,
+                         @NonNull Set<String> sensitiveBuildVariables) {
         // Some default/empty value handling for test plans/folders
         // ProvarProject/tests/ will run all tests
         if (!testPlan.isEmpty()) {
@@ -243,75 +852,121 @@ public class ProvarAutomation extends Builder {
         env.put("PROJECT_NAME", projectName);
         env.put("LICENSE_PATH", licensePath);
 
-        VariableResolver<String> vr = new VariableResolver.ByMap<>(env);
-        FilePath buildFilePath = buildFilePath(build.getModuleRoot(), buildFile, env.expand(projectName));
+        Set<String> sensitiveVars = new HashSet<>(sensitiveBuildVariables);
+        sensitiveVars.add("ProvarSecretsPassword");
+        args.addKeyValuePairs("-D", buildVariables, sensitiveVars);
+        String properties = "ProvarSecretsPassword=" + secretsPassword.getPlainText();
+        args.addKeyValuePairsFromPropertyString("-D", properties, new VariableResolver.ByMap<>(env), sensitiveVars);
+    }
 
-        if(!buildFilePath.exists()) {
-            listener.getLogger().println(Jenkins.getInstance().getRootDir());
+    private FilePath testFolderPath(FilePath projectPath) {
+        FilePath tests = projectPath.child("tests");
+        return testFolder.equalsIgnoreCase("All") ? tests : tests.child(testFolder);
+    }
 
-            // first check if this appears to be a valid relative path from workspace root
-            if (workspaceFilePath != null) {
-                FilePath buildFilePath2 = buildFilePath(workspaceFilePath, buildFile, env.expand(projectName));
-                if(buildFilePath2.exists()) {
-                    // This must be what the user meant. Let it continue.
-                    buildFilePath = buildFilePath2;
-                } else {
-                    // neither file exists. build the build file
-                    buildFilePath = launcher.isUnix() ? new FilePath(workspaceFilePath, "/" + buildFile) : new FilePath(workspaceFilePath, "\\" + buildFile);
-                    //throw new AbortException("Unable to find build script at "+ buildFilePath);
-                }
-            } else {
-                throw new AbortException("Workspace is not available. Agent may be disconnected.");
-            }
+    /**
+     * Test cases of the test folder affected by the files changed since the last successful build,
+     * or {@code null} if the whole test folder has to run.
+     */
+    @CheckForNull
+    private List<String> affectedTestCases(Run<?, ?> build, String projectName, FilePath projectPath, TaskListener listener)
+            throws IOException, InterruptedException {
+        Set<String> changed = changedProjectFiles(build, projectName);
+        if (changed == null) {
+            listener.getLogger().println("Affected tests: no successful build to compare against, running the whole test folder");
+            return null;
         }
-        listener.getLogger().println("BUILD FILE PATH:" + buildFilePath);
-
-        if(buildFile != null) {
-            args.add("-file", buildFilePath.getName());
+        // a build without changes to the project, e.g. started by hand or by a timer, still runs the tests
+        if (changed.isEmpty()) {
+            listener.getLogger().println("Affected tests: no changes to the project since the last successful build, running the whole test folder");
+            return null;
         }
-        Set<String> sensitiveVars = build.getSensitiveBuildVariables();
-        sensitiveVars.add("ProvarSecretsPassword");
-        args.addKeyValuePairs("-D", build.getBuildVariables(), sensitiveVars);
-        String properties = "ProvarSecretsPassword=" + secretsPassword.getPlainText();
-        args.addKeyValuePairsFromPropertyString("-D", properties, vr, sensitiveVars);
-
-        if(pi != null) {
-            pi.buildEnvVars(env);
+        Set<String> affected = projectPath.act(new ProvarTestIndex.Builder()).affected(changed);
+        if (affected == null) {
+            listener.getLogger().println("Affected tests: changes outside of tests and page objects, running the whole test folder");
+            return null;
+        }
+        String folder = StringUtils.strip(testFolder.replace('\\', '/'), "/");
+        String prefix = testFolder.equalsIgnoreCase("All") || folder.isEmpty() ? "tests/" : "tests/" + folder + "/";
+        List<String> testCases = new ArrayList<>();
+        for (String testCase : affected) {
+            if (testCase.startsWith(prefix)) {
+                testCases.add(testCase.substring(prefix.length()));
+            }
         }
-        if(!launcher.isUnix()) {
-            args = toWindowsCommand(args.toWindowsCommand());
+        if (testCases.isEmpty()) {
+            listener.getLogger().println("Affected tests: " + changed.size() + " changed files affect no test cases of the test folder, running the whole test folder");
+            return null;
         }
+        listener.getLogger().println("Affected tests: " + changed.size() + " changed files affect " + testCases.size() + " test cases");
+        return testCases;
+    }
 
-        long startTime = System.currentTimeMillis();
-        try {
-            AntConsoleAnnotator aca = new AntConsoleAnnotator(listener.getLogger(), build.getCharset());
-            int r;
-            try {
-                r = launcher.launch().cmds(args).envs(env).stdout(aca).pwd(buildFilePath.getParent()).join();
-            } finally {
-                aca.forceEol();
+    /**
+     * Files of the project changed since the last successful build, relative to the project folder,
+     * or {@code null} if there is no successful build to compare against.
+     */
+    @CheckForNull
+    private static Set<String> changedProjectFiles(Run<?, ?> build, String projectName) {
+        String prefix = projectName.isEmpty() ? "" : StringUtils.strip(projectName.replace('\\', '/'), "/") + "/";
+        Set<String> changed = new TreeSet<>();
+        for (Run<?, ?> b = build; b != null; b = b.getPreviousBuild()) {
+            if (b != build && b.getResult() == Result.SUCCESS) {
+                return changed;
             }
-            return r==0;
-        } catch (IOException e) {
-            Util.displayIOException(e,listener);
+            if (!(b instanceof RunWithSCM)) {
+                continue;
+            }
+            for (ChangeLogSet<? extends ChangeLogSet.Entry> changeSet : ((RunWithSCM<?, ?>) b).getChangeSets()) {
+                for (ChangeLogSet.Entry entry : changeSet) {
+                    for (String path : entry.getAffectedPaths()) {
+                        path = path.replace('\\', '/');
+                        if (path.startsWith(prefix)) {
+                            changed.add(path.substring(prefix.length()));
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
 
-            String errorMessage = Messages.ProvarAutomation_AntExecutionFailed();
-            if(pi == null && (System.currentTimeMillis()-startTime)<1000) {
-                if(getDescriptor().getInstallations() == null)
-                    // looks like the user didn't configure any Ant installation
-                    errorMessage += Messages.ProvarAutomation_GlobalConfigNeeded();
-                else
-                    // There are Ant installations configured but the project didn't pick it
-                    errorMessage += Messages.ProvarAutomation_ProjectConfigNeeded();
+    private int resolveShardIndex(EnvVars env) throws AbortException {
+        String index = shardIndex != null ? env.expand(shardIndex) : env.get("PROVAR_SHARD");
+        try {
+            int i = Integer.parseInt(Util.fixNull(index).trim());
+            if (i >= 1 && i <= shardCount) {
+                return i;
             }
-            throw new AbortException(errorMessage);
+        } catch (NumberFormatException e) {
+            // reported below
         }
+        throw new AbortException(Messages.ProvarAutomation_InvalidShardIndex(index, shardCount));
     }
 
-    private static FilePath buildFilePath(FilePath base, String buildFile, String projectName) {
-        return base.child(projectName + File.separator + "ANT" + File.separator + buildFile);
+    @Override
+    public MatrixAggregator createAggregator(MatrixBuild build, Launcher launcher, BuildListener listener) {
+        return new ProvarResultsAction.Aggregator(build, launcher, listener);
     }
 
+    /**
+     * Target of the build file that only compiles the project, run once before several browsers.
+     */
+    static final String COMPILE_TARGET = "compile";
+    /**
+     * Property holding the Results folder in the build file, set per browser when several run concurrently.
+     */
+    static final String RESULTS_PROPERTY = "testproject.results";
+    /**
+     * Property holding the metadata cache folder in the build file, set per browser when several run concurrently.
+     */
+    static final String CACHE_PATH_PROPERTY = "provar.cachePath";
+
+    /**
+     * Seconds between two looks at the Results folder while Provar is running.
+     */
+    static final long RESULTS_POLL_INTERVAL = Long.getLong(ProvarAutomation.class.getName() + ".resultsPollInterval", 15);
+
     @Override
     public DescriptorImpl getDescriptor() {
         return (DescriptorImpl)super.getDescriptor();
@@ -397,27 +1052,59 @@ public class ProvarAutomation extends Builder {
         }
 
         @POST
-        public FormValidation doCheckTestPlan(@QueryParameter String value)
+        public FormValidation doCheckTestPlan(@QueryParameter String value, @AncestorInPath Item item)
                 throws IOException, ServletException {
-            if (!Jenkins.get().hasPermission(Jenkins.ADMINISTER)) {
+            if (!canCheck(item)) {
                 return FormValidation.ok();
             }
             if (value.length() == 0)
                 return FormValidation.warning(Messages.ProvarAutomation_DescriptorImpl_warnings_missingTestPlan());
 
-            return FormValidation.ok();
+            return ProvarFolderIndex.check(item, ProvarFolderIndex.PLANS, value);
         }
 
         @POST
-        public FormValidation doCheckTestFolder(@QueryParameter String value)
+        public FormValidation doCheckTestFolder(@QueryParameter String value, @AncestorInPath Item item)
                 throws IOException, ServletException {
-            if (!Jenkins.get().hasPermission(Jenkins.ADMINISTER)) {
+            if (!canCheck(item)) {
                 return FormValidation.ok();
             }
             if (value.length() == 0)
                 return FormValidation.warning(Messages.ProvarAutomation_DescriptorImpl_warnings_missingTestFolder());
 
-            return FormValidation.ok();
+            return ProvarFolderIndex.check(item, ProvarFolderIndex.TESTS, value);
+        }
+
+        /**
+         * Test plans of the project folder of the last build, see {@link ProvarFolderIndex}.
+         */
+        public AutoCompletionCandidates doAutoCompleteTestPlan(@QueryParameter String value, @AncestorInPath Item item) {
+            return autoComplete(item, ProvarFolderIndex.PLANS, value);
+        }
+
+        /**
+         * Test folders of the project folder of the last build, see {@link ProvarFolderIndex}.
+         */
+        public AutoCompletionCandidates doAutoCompleteTestFolder(@QueryParameter String value, @AncestorInPath Item item) {
+            return autoComplete(item, ProvarFolderIndex.TESTS, value);
+        }
+
+        /**
+         * Whether the user may see the test plans and folders of the job: users who can configure it, or administrators
+         * when the form has no job, e.g. in the snippet generator.
+         */
+        private static boolean canCheck(@CheckForNull Item item) {
+            return item != null ? item.hasPermission(Item.CONFIGURE) : Jenkins.get().hasPermission(Jenkins.ADMINISTER);
+        }
+
+        private static AutoCompletionCandidates autoComplete(Item item, String root, String value) {
+            AutoCompletionCandidates candidates = new AutoCompletionCandidates();
+            if (item != null && item.hasPermission(Item.CONFIGURE)) {
+                for (String path : ProvarFolderIndex.candidates(item, root, Util.fixNull(value))) {
+                    candidates.add(path);
+                }
+            }
+            return candidates;
         }
 
         @POST
@@ -456,6 +1143,46 @@ public class ProvarAutomation extends Builder {
             return FormValidation.ok();
         }
 
+        @POST
+        public FormValidation doCheckAdditionalBrowsers(@QueryParameter String value) {
+            if (!Jenkins.get().hasPermission(Jenkins.ADMINISTER)) {
+                return FormValidation.ok();
+            }
+            for (String name : Util.fixNull(value).trim().split("[,\\s]+")) {
+                if (!name.isEmpty() && Arrays.stream(Browser.values()).noneMatch(b -> b.name().equals(name))) {
+                    return FormValidation.error(Messages.ProvarAutomation_UnknownBrowser(name, Arrays.toString(Browser.values())));
+                }
+            }
+            return FormValidation.ok();
+        }
+
+        @POST
+        public FormValidation doCheckFailFastPercent(@QueryParameter String value) {
+            if (!Jenkins.get().hasPermission(Jenkins.ADMINISTER)) {
+                return FormValidation.ok();
+            }
+            if (Util.fixEmptyAndTrim(value) == null) {
+                return FormValidation.ok();
+            }
+            try {
+                int percent = Integer.parseInt(value.trim());
+                if (percent >= 0 && percent <= 100) {
+                    return FormValidation.ok();
+                }
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+            return FormValidation.error(Messages.ProvarAutomation_InvalidPercentage());
+        }
+
+        @POST
+        public FormValidation doCheckShardCount(@QueryParameter String value) {
+            if (!Jenkins.get().hasPermission(Jenkins.ADMINISTER)) {
+                return FormValidation.ok();
+            }
+            return FormValidation.validatePositiveInteger(value);
+        }
+
         @Override
         public boolean isApplicable(Class<? extends AbstractProject> aClass) {
             return true;
@@ -485,6 +1212,8 @@ public class ProvarAutomation extends Builder {
         public static final String defaultLicensePath = osName.contains("Windows") ? windowsLicensePath : unixLicensePath;
         public static final SalesforceMetadataCacheSettings defaultSalesforceMetadataCacheSetting = SalesforceMetadataCacheSettings.Reuse;
         public static final ResultsPathSettings defaultResultsPathSetting = ResultsPathSettings.Increment;
+        public static final int defaultShardCount = 1;
+        public static final int defaultFailFastWindow = 10;
 
         @POST
         public ListBoxModel doFillBrowserItems() {
@@ -683,4 +1412,101 @@ public class ProvarAutomation extends Builder {
             }
         }
     }
+
+    /**
+     * Provar installer that downloads each version once onto the controller (or a local mirror directory),
+     * verifies its checksum and streams it to the agents over the remoting channel.
+     * Uses the same list of versions as {@link ProvarAutomationInstaller}.
+     */
+    public static class ProvarAutomationCachingInstaller extends DownloadFromUrlInstaller {
+        private String mirror;
+        private String checksum;
+
+        @DataBoundConstructor
+        public ProvarAutomationCachingInstaller(String id) {
+            super(id);
+        }
+
+        public String getMirror() { return mirror; }
+
+        @DataBoundSetter
+        public void setMirror(String mirror) {
+            this.mirror = Util.fixEmptyAndTrim(mirror);
+        }
+
+        public String getChecksum() { return checksum; }
+
+        @DataBoundSetter
+        public void setChecksum(String checksum) {
+            this.checksum = Util.fixEmptyAndTrim(checksum);
+        }
+
+        @Override
+        public FilePath performInstallation(ToolInstallation tool, Node node, TaskListener log) throws IOException, InterruptedException {
+            FilePath expected = preferredLocation(tool, node);
+            Installable inst = getInstallable();
+            if (inst == null) {
+                log.getLogger().println("Invalid tool ID " + id);
+                return expected;
+            }
+            if (isUpToDate(expected, inst)) {
+                return expected;
+            }
+            File archive = ProvarInstallerCache.fetch(inst, mirror, checksum, log);
+            log.getLogger().println("Installing Provar Automation CLI " + inst.name + " on " + node.getDisplayName() + " from " + archive);
+            expected.deleteRecursive();
+            expected.mkdirs();
+            try (InputStream in = Files.newInputStream(archive.toPath())) {
+                expected.unzipFrom(in);
+            }
+            FilePath base = findPullUpDirectory(expected);
+            if (base != null && !base.equals(expected)) {
+                base.moveAllChildrenTo(expected);
+            }
+            expected.child(".installedFrom").write(inst.url, "UTF-8");
+            return expected;
+        }
+
+        @Symbol("provarCached")
+        @Extension
+        public static final class DescriptorImpl extends DownloadFromUrlInstaller.DescriptorImpl<ProvarAutomationCachingInstaller> {
+
+            public String getDisplayName() {
+                return Messages.ProvarAutomation_InstallProvarCached();
+            }
+
+            /**
+             * Shares the installer list published for {@link ProvarAutomationInstaller}.
+             */
+            @Override
+            public List<? extends DownloadFromUrlInstaller.Installable> getInstallables() throws IOException {
+                return Jenkins.get().getDescriptorByType(ProvarAutomationInstaller.DescriptorImpl.class).getInstallables();
+            }
+
+            /**
+             * No list of its own to download, see {@link #getInstallables()}.
+             */
+            @Override
+            protected DownloadService.Downloadable createDownloadable() {
+                return null;
+            }
+
+            @Override
+            public boolean isApplicable(Class<? extends ToolInstallation> toolType) {
+                return toolType== ProvarAutomationInstallation.class;
+            }
+
+            @POST
+            public FormValidation doCheckMirror(@QueryParameter String value) {
+                if (!Jenkins.get().hasPermission(Jenkins.ADMINISTER) || Util.fixEmptyAndTrim(value) == null) {
+                    return FormValidation.ok();
+                }
+                File dir = new File(value.trim());
+                if (dir.exists() && !dir.isDirectory()) {
+                    return FormValidation.error(Messages.ProvarAutomation_NotADirectory(dir));
+                }
+                return FormValidation.ok();
+            }
+        }
+    }
 }
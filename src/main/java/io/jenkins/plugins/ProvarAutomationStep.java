@@ -0,0 +1,706 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.ArgumentListBuilder;
+import hudson.util.Secret;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.durabletask.BourneShellScript;
+import org.jenkinsci.plugins.durabletask.Controller;
+import org.jenkinsci.plugins.durabletask.DurableTask;
+import org.jenkinsci.plugins.durabletask.WindowsBatchScript;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs Provar from a Pipeline without holding a thread for the whole run. The Ant invocation prepared by
+ * {@link ProvarAutomation} is launched as a durable task on the agent, whose output and exit status are
+ * checked from a timer; the execution is saved with the Pipeline, so after a controller restart it reattaches
+ * to the process still running on the agent.
+ */
+public class ProvarAutomationStep extends Step {
+
+    private final ProvarAutomation automation;
+
+    @DataBoundConstructor
+    public ProvarAutomationStep(@NonNull String provarAutomationName,
+                                @NonNull String buildFile,
+                                @NonNull String testPlan,
+                                @NonNull String testFolder,
+                                @NonNull String environment,
+                                @NonNull ProvarAutomation.Browser browser,
+                                @NonNull Secret secretsPassword,
+                                @NonNull ProvarAutomation.SalesforceMetadataCacheSettings salesforceMetadataCacheSetting,
+                                @NonNull ProvarAutomation.ResultsPathSettings resultsPathSetting,
+                                @NonNull String projectName,
+                                @NonNull String licensePath) {
+        this.automation = new ProvarAutomation(provarAutomationName, buildFile, testPlan, testFolder, environment, browser,
+                secretsPassword, salesforceMetadataCacheSetting, resultsPathSetting, projectName, licensePath);
+    }
+
+    @NonNull
+    public String getProvarAutomationName() { return automation.getProvarAutomationName(); }
+    @NonNull
+    public String getBuildFile() { return automation.getBuildFile(); }
+    @NonNull
+    public String getTestPlan() { return automation.getTestPlan(); }
+    @NonNull
+    public String getTestFolder() { return automation.getTestFolder(); }
+    @NonNull
+    public String getEnvironment() { return automation.getEnvironment(); }
+    @NonNull
+    public ProvarAutomation.Browser getBrowser() { return automation.getBrowser(); }
+    @NonNull
+    public Secret getSecretsPassword() { return automation.getSecretsPassword(); }
+    @NonNull
+    public ProvarAutomation.SalesforceMetadataCacheSettings getSalesforceMetadataCacheSetting() { return automation.getSalesforceMetadataCacheSetting(); }
+    @NonNull
+    public ProvarAutomation.ResultsPathSettings getResultsPathSetting() { return automation.getResultsPathSetting(); }
+    @NonNull
+    public String getProjectName() { return automation.getProjectName(); }
+    @NonNull
+    public String getLicensePath() { return automation.getLicensePath(); }
+
+    public int getShardCount() { return automation.getShardCount(); }
+
+    @DataBoundSetter
+    public void setShardCount(int shardCount) { automation.setShardCount(shardCount); }
+
+    public String getShardIndex() { return automation.getShardIndex(); }
+
+    @DataBoundSetter
+    public void setShardIndex(String shardIndex) { automation.setShardIndex(shardIndex); }
+
+    public boolean isPersistMetadataCache() { return automation.isPersistMetadataCache(); }
+
+    @DataBoundSetter
+    public void setPersistMetadataCache(boolean persistMetadataCache) { automation.setPersistMetadataCache(persistMetadataCache); }
+
+    public String getMetadataCacheStore() { return automation.getMetadataCacheStore(); }
+
+    @DataBoundSetter
+    public void setMetadataCacheStore(String metadataCacheStore) { automation.setMetadataCacheStore(metadataCacheStore); }
+
+    public boolean isCacheCompiledProject() { return automation.isCacheCompiledProject(); }
+
+    @DataBoundSetter
+    public void setCacheCompiledProject(boolean cacheCompiledProject) { automation.setCacheCompiledProject(cacheCompiledProject); }
+
+    public boolean isAffectedTestsOnly() { return automation.isAffectedTestsOnly(); }
+
+    @DataBoundSetter
+    public void setAffectedTestsOnly(boolean affectedTestsOnly) { automation.setAffectedTestsOnly(affectedTestsOnly); }
+
+    public int getRerunFailedTests() { return automation.getRerunFailedTests(); }
+
+    @DataBoundSetter
+    public void setRerunFailedTests(int rerunFailedTests) { automation.setRerunFailedTests(rerunFailedTests); }
+
+    public int getFailFastFailures() { return automation.getFailFastFailures(); }
+
+    @DataBoundSetter
+    public void setFailFastFailures(int failFastFailures) { automation.setFailFastFailures(failFastFailures); }
+
+    public int getFailFastPercent() { return automation.getFailFastPercent(); }
+
+    @DataBoundSetter
+    public void setFailFastPercent(int failFastPercent) { automation.setFailFastPercent(failFastPercent); }
+
+    public int getFailFastWindow() { return automation.getFailFastWindow(); }
+
+    @DataBoundSetter
+    public void setFailFastWindow(int failFastWindow) { automation.setFailFastWindow(failFastWindow); }
+
+    public int getResultsToKeep() { return automation.getResultsToKeep(); }
+
+    @DataBoundSetter
+    public void setResultsToKeep(int resultsToKeep) { automation.setResultsToKeep(resultsToKeep); }
+
+    public int getResultsSizeLimit() { return automation.getResultsSizeLimit(); }
+
+    @DataBoundSetter
+    public void setResultsSizeLimit(int resultsSizeLimit) { automation.setResultsSizeLimit(resultsSizeLimit); }
+
+    public boolean isCompressOldResults() { return automation.isCompressOldResults(); }
+
+    @DataBoundSetter
+    public void setCompressOldResults(boolean compressOldResults) { automation.setCompressOldResults(compressOldResults); }
+
+    public String getAdditionalBrowsers() { return automation.getAdditionalBrowsers(); }
+
+    @DataBoundSetter
+    public void setAdditionalBrowsers(String additionalBrowsers) { automation.setAdditionalBrowsers(additionalBrowsers); }
+
+    public String getAdditionalEnvironments() { return automation.getAdditionalEnvironments(); }
+
+    @DataBoundSetter
+    public void setAdditionalEnvironments(String additionalEnvironments) { automation.setAdditionalEnvironments(additionalEnvironments); }
+
+    public boolean isWarmRunner() { return automation.isWarmRunner(); }
+
+    @DataBoundSetter
+    public void setWarmRunner(boolean warmRunner) { automation.setWarmRunner(warmRunner); }
+
+    public boolean isOffloadDetailedLog() { return automation.isOffloadDetailedLog(); }
+
+    @DataBoundSetter
+    public void setOffloadDetailedLog(boolean offloadDetailedLog) { automation.setOffloadDetailedLog(offloadDetailedLog); }
+
+    public boolean isPublishResults() { return automation.isPublishResults(); }
+
+    @DataBoundSetter
+    public void setPublishResults(boolean publishResults) { automation.setPublishResults(publishResults); }
+
+    @NonNull
+    ProvarAutomation getAutomation() { return automation; }
+
+    @Override
+    public StepExecution start(StepContext context) {
+        return new Execution(context, this);
+    }
+
+    /**
+     * Writes the Ant command line into a script for the durable task. Masked arguments (the secrets password)
+     * are passed in the environment of the process instead, so they are never written to the agent's disk.
+     */
+    @NonNull
+    static DurableTask script(@NonNull ProvarInvocation invocation, boolean unix, @NonNull EnvVars env) {
+        ArgumentListBuilder args = invocation.getArgs();
+        List<String> arguments = args.toList();
+        boolean[] masks = args.toMaskArray();
+        String eol = unix ? "\n" : "\r\n";
+        StringBuilder script = new StringBuilder();
+        if (unix) {
+            script.append("#!/bin/sh -e").append(eol);
+            script.append("cd ").append(shellQuote(invocation.getWorkingDirectory().getRemote())).append(eol);
+            script.append("exec");
+        } else {
+            script.append("@echo off").append(eol);
+            script.append("cd /d ").append(batchQuote(invocation.getWorkingDirectory().getRemote())).append(eol);
+            script.append("call");
+        }
+        for (int i = 0; i < arguments.size(); i++) {
+            String argument = arguments.get(i);
+            script.append(' ');
+            if (masks[i]) {
+                String variable = "PROVAR_MASKED_ARG_" + i;
+                env.put(variable, argument);
+                script.append(unix ? "\"$" + variable + "\"" : "\"%" + variable + "%\"");
+            } else {
+                script.append(unix ? shellQuote(argument) : batchQuote(argument));
+            }
+        }
+        script.append(eol);
+        if (unix) {
+            return new BourneShellScript(script.toString());
+        }
+        script.append("exit /b %ERRORLEVEL%").append(eol);
+        return new WindowsBatchScript(script.toString());
+    }
+
+    static String shellQuote(String argument) {
+        return "'" + argument.replace("'", "'\\''") + "'";
+    }
+
+    static String batchQuote(String argument) {
+        // Ant on Windows rejects empty property values, see ProvarAutomation.toWindowsCommand
+        if (argument.startsWith("-D") && argument.endsWith("=")) {
+            return argument + "\"\"";
+        }
+        if (argument.isEmpty() || argument.matches(".*[\\s\"&|<>^%()].*")) {
+            return "\"" + argument.replace("%", "%%").replace("\"", "\"\"") + "\"";
+        }
+        return argument;
+    }
+
+    static final class Execution extends StepExecution {
+
+        private static final long serialVersionUID = 1L;
+        private static final Logger LOGGER = Logger.getLogger(Execution.class.getName());
+        /**
+         * Milliseconds between two looks at the output and the exit status of Provar.
+         */
+        private static final long CHECK_INTERVAL = Long.getLong(ProvarAutomationStep.class.getName() + ".checkInterval", 5000);
+
+        private final transient ProvarAutomationStep step;
+        // where the durable tasks run, used to find the agent again after a restart
+        private String node;
+        private String remote;
+        // one invocation per browser, running concurrently
+        private List<ProvarInvocation> invocations;
+        private List<Controller> controllers;
+        private Integer[] exitCodes;
+        private boolean done;
+        private transient ProvarConsoleAnnotator[] annotators;
+        // license seats held while Provar runs
+        @CheckForNull
+        private ProvarLicenseSeats.Lease lease;
+        // waiting for license seats, to prepare and launch the invocations once they are granted
+        @CheckForNull
+        private transient ProvarLicenseSeats.Request waiting;
+        private transient long lastPoll;
+
+        Execution(StepContext context, ProvarAutomationStep step) {
+            super(context);
+            this.step = step;
+        }
+
+        @Override
+        public boolean start() throws Exception {
+            FilePath workspace = getContext().get(FilePath.class);
+            Node n = getContext().get(Node.class);
+            node = n != null ? n.getNodeName() : "";
+            remote = workspace.getRemote();
+            // resolving the installation and the tests needs a few calls to the agent, and several browsers
+            // share a compile that runs up front, so keep them off the CPS thread
+            Computer.threadPoolForRemoting.submit(this::launch);
+            return false;
+        }
+
+        private void launch() {
+            StepContext context = getContext();
+            try {
+                Run<?, ?> run = context.get(Run.class);
+                TaskListener listener = context.get(TaskListener.class);
+                EnvVars env = context.get(EnvVars.class);
+                String licensePath = step.getAutomation().getLicensePath(env);
+                // one license seat per concurrent run, held across reruns and restarts; taken before the
+                // up-front compile, which runs Provar already. The seats are waited for without holding a thread
+                ProvarLicenseSeats.Request request = ProvarLicenseSeats.get().request(licensePath,
+                        step.getAutomation().getRuns(env), run.getFullDisplayName());
+                if (request == null) {
+                    launch(null);
+                    return;
+                }
+                synchronized (this) {
+                    if (done) {
+                        request.cancel();
+                        return;
+                    }
+                    waiting = request;
+                }
+                request.waiting(run, listener);
+                request.future.thenAccept(granted -> Computer.threadPoolForRemoting.submit(() -> launch(granted)));
+            } catch (Exception e) {
+                finish(false, e);
+            }
+        }
+
+        /**
+         * Prepares and launches the invocations, once they got their license seats if the license has a pool.
+         */
+        private void launch(@CheckForNull ProvarLicenseSeats.Lease granted) {
+            StepContext context = getContext();
+            List<Controller> launched = new ArrayList<>();
+            FilePath workspace = null;
+            Launcher launcher = null;
+            try {
+                Run<?, ?> run = context.get(Run.class);
+                workspace = context.get(FilePath.class);
+                launcher = context.get(Launcher.class);
+                TaskListener listener = context.get(TaskListener.class);
+                synchronized (this) {
+                    waiting = null;
+                    if (done) {
+                        // stopped while waiting
+                        if (granted != null) {
+                            granted.release();
+                        }
+                        return;
+                    }
+                }
+                if (granted != null) {
+                    granted.record(run, listener);
+                }
+                List<ProvarInvocation> prepared;
+                try {
+                    prepared = step.getAutomation().prepare(run, workspace, workspace, new EnvVars(context.get(EnvVars.class)),
+                            Collections.emptyMap(), Collections.emptySet(), launcher, listener);
+                } catch (Exception e) {
+                    if (granted != null) {
+                        granted.release();
+                    }
+                    throw e;
+                }
+                if (prepared.isEmpty()) {
+                    if (granted != null) {
+                        granted.release();
+                    }
+                    finish(true, null);
+                    return;
+                }
+                synchronized (this) {
+                    if (done) {
+                        // stopped while preparing
+                        if (granted != null) {
+                            granted.release();
+                        }
+                        cleanUp(prepared);
+                        return;
+                    }
+                    lease = granted;
+                }
+                if (granted != null) {
+                    prepared.get(0).getMetrics().add(ProvarMetrics.Phase.LicenseWait, granted.getWaited());
+                }
+                if (step.getAutomation().isWarmRunner()) {
+                    listener.getLogger().println("Warm runner: not used by the Pipeline step, Provar runs as a durable task");
+                }
+                for (ProvarInvocation invocation : prepared) {
+                    launched.add(launch(invocation, workspace, launcher, listener, context));
+                }
+                synchronized (this) {
+                    if (!done) {
+                        invocations = prepared;
+                        controllers = launched;
+                        exitCodes = new Integer[launched.size()];
+                        schedule(0);
+                        return;
+                    }
+                }
+                // stopped while launching
+                for (Controller controller : launched) {
+                    controller.stop(workspace, launcher);
+                }
+                cleanUp(prepared);
+            } catch (Exception e) {
+                finish(false, e);
+            }
+        }
+
+        private static void cleanUp(List<ProvarInvocation> prepared) throws IOException, InterruptedException {
+            for (ProvarInvocation invocation : prepared) {
+                invocation.cleanUp();
+            }
+        }
+
+        private static Controller launch(ProvarInvocation invocation, FilePath workspace, Launcher launcher, TaskListener listener,
+                                         StepContext context) throws IOException, InterruptedException {
+            // only the variables of the plugin are saved with the step, the rest comes from the context as for sh
+            invocation.restoreEnv(context.get(EnvVars.class));
+            invocation.started();
+            EnvVars taskEnv = new EnvVars(invocation.getEnv());
+            DurableTask task = script(invocation, launcher.isUnix(), taskEnv);
+            return task.launch(taskEnv, workspace, launcher, listener);
+        }
+
+        private void schedule(long delay) {
+            Timer.get().schedule(this::check, delay, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Looks at the output and the exit status of Provar, on the timer. Whatever takes longer, such as reading the
+         * results or finishing the invocations, is handed over to {@link Computer#threadPoolForRemoting}.
+         */
+        private void check() {
+            if (isDone()) {
+                return;
+            }
+            StepContext context = getContext();
+            Map<Integer, Integer> ended = new TreeMap<>();
+            boolean running = false;
+            try {
+                TaskListener listener = context.get(TaskListener.class);
+                FilePath workspace = workspace();
+                if (workspace == null) {
+                    // the agent is not connected (yet), e.g. after a controller restart
+                    schedule(CHECK_INTERVAL);
+                    return;
+                }
+                Launcher launcher = launcher(listener);
+                for (int i = 0; i < controllers.size(); i++) {
+                    if (exitCodes[i] != null) {
+                        continue;
+                    }
+                    Controller controller = controllers.get(i);
+                    controller.writeLog(workspace, annotator(i, listener));
+                    ProvarFailFast failFast = invocations.get(i).getFailFast();
+                    if (failFast != null && failFast.stop()) {
+                        // the durable task kills the whole process tree, its exit status follows
+                        listener.getLogger().println(Messages.ProvarAutomation_FailFast(failFast.getReason()));
+                        controller.stop(workspace, launcher);
+                    }
+                    Integer exitCode = controller.exitStatus(workspace, launcher, listener);
+                    if (exitCode == null) {
+                        running = true;
+                    } else {
+                        ended.put(i, exitCode);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Unable to check Provar on " + node + ", trying again", e);
+                schedule(CHECK_INTERVAL);
+                return;
+            } catch (Exception e) {
+                finish(false, e);
+                return;
+            }
+            if (!ended.isEmpty() || !running) {
+                // checked again once the ended runs are rerun or done with
+                Computer.threadPoolForRemoting.submit(() -> complete(ended));
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastPoll >= TimeUnit.SECONDS.toMillis(ProvarAutomation.RESULTS_POLL_INTERVAL)) {
+                lastPoll = now;
+                Computer.threadPoolForRemoting.submit(this::pollResults);
+            }
+            schedule(CHECK_INTERVAL);
+        }
+
+        private void pollResults() {
+            try {
+                ProvarResultsAction action = ProvarResultsAction.of(getContext().get(Run.class));
+                for (ProvarInvocation invocation : invocations) {
+                    invocation.getWatcher().attach(action).pollQuietly();
+                }
+            } catch (IOException | InterruptedException e) {
+                LOGGER.log(Level.FINE, "Unable to read the Provar results on " + node, e);
+            }
+        }
+
+        /**
+         * Reruns the failed test cases of the ended runs or records their exit status, then finishes the
+         * invocations once every run ended.
+         *
+         * @param ended the exit status by index of the runs that ended since the last check
+         */
+        private void complete(Map<Integer, Integer> ended) {
+            StepContext context = getContext();
+            try {
+                TaskListener listener = context.get(TaskListener.class);
+                FilePath workspace = workspace();
+                if (workspace == null) {
+                    schedule(CHECK_INTERVAL);
+                    return;
+                }
+                Launcher launcher = launcher(listener);
+                for (Map.Entry<Integer, Integer> e : ended.entrySet()) {
+                    int i = e.getKey();
+                    Controller controller = controllers.get(i);
+                    controller.writeLog(workspace, annotator(i, listener));
+                    annotator(i, listener).forceEol();
+                    controller.cleanup(workspace);
+                    if (invocations.get(i).rerun(e.getValue(), listener)) {
+                        controllers.set(i, launch(invocations.get(i), workspace, launcher, listener, context));
+                    } else {
+                        exitCodes[i] = e.getValue();
+                    }
+                }
+                if (Arrays.asList(exitCodes).contains(null)) {
+                    schedule(CHECK_INTERVAL);
+                    return;
+                }
+                Run<?, ?> run = context.get(Run.class);
+                Integer failed = null;
+                for (int i = 0; i < invocations.size(); i++) {
+                    ProvarInvocation invocation = invocations.get(i);
+                    invocation.archiveLog(run, listener);
+                    invocation.cleanUp();
+                    invocation.measured(annotator(i, listener));
+                    if (!invocation.finish(run, exitCodes[i], listener) && failed == null) {
+                        failed = exitCodes[i];
+                    }
+                }
+                finish(failed == null, failed == null ? null : new AbortException(Messages.ProvarAutomation_AntExitCode(failed)));
+            } catch (Exception e) {
+                finish(false, e);
+            }
+        }
+
+        @Override
+        public void stop(@NonNull Throwable cause) throws Exception {
+            List<Controller> launched;
+            ProvarLicenseSeats.Request request;
+            synchronized (this) {
+                launched = controllers;
+                request = waiting;
+            }
+            if (request != null) {
+                request.cancel();
+            }
+            if (launched != null) {
+                FilePath workspace = workspace();
+                if (workspace != null) {
+                    Launcher launcher = launcher(getContext().get(TaskListener.class));
+                    for (Controller controller : launched) {
+                        controller.stop(workspace, launcher);
+                    }
+                    // keep what was logged until the abort
+                    Run<?, ?> run = getContext().get(Run.class);
+                    for (ProvarInvocation invocation : invocations) {
+                        invocation.archiveLog(run, getContext().get(TaskListener.class));
+                        invocation.cleanUp();
+                    }
+                }
+            }
+            finish(false, cause);
+        }
+
+        @Override
+        public void onResume() {
+            super.onResume();
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (controllers == null) {
+                    finish(false, new AbortException(Messages.ProvarAutomation_NotStartedBeforeRestart()));
+                    return;
+                }
+                // the seats of Provar still running, whether or not other builds took them meanwhile
+                if (lease != null) {
+                    lease.reclaim();
+                }
+            }
+            schedule(0);
+        }
+
+        @Override
+        public String getStatus() {
+            if (isDone()) {
+                return "finished";
+            }
+            ProvarLicenseSeats.Request request;
+            synchronized (this) {
+                request = waiting;
+            }
+            if (request != null) {
+                return "waiting for Provar license seats, " + request.position() + " builds ahead";
+            }
+            return controllers == null ? "preparing Provar on " + node : "waiting for Provar on " + node + " in " + remote;
+        }
+
+        private void finish(boolean success, @CheckForNull Throwable failure) {
+            ProvarLicenseSeats.Lease held;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                held = lease;
+            }
+            if (held != null) {
+                held.release();
+            }
+            if (success) {
+                getContext().onSuccess(null);
+            } else {
+                getContext().onFailure(failure);
+            }
+        }
+
+        private synchronized boolean isDone() {
+            return done;
+        }
+
+        @CheckForNull
+        private Node agent() {
+            Jenkins jenkins = Jenkins.get();
+            return node.isEmpty() ? jenkins : jenkins.getNode(node);
+        }
+
+        @CheckForNull
+        private FilePath workspace() {
+            Node n = agent();
+            return n != null ? n.createPath(remote) : null;
+        }
+
+        private Launcher launcher(TaskListener listener) throws AbortException {
+            Node n = agent();
+            if (n == null) {
+                throw new AbortException(Messages.ProvarAutomation_NodeOffline());
+            }
+            return n.createLauncher(listener);
+        }
+
+        private ProvarConsoleAnnotator annotator(int i, TaskListener listener) {
+            if (annotators == null) {
+                annotators = new ProvarConsoleAnnotator[controllers.size()];
+            }
+            if (annotators[i] == null) {
+                // tell the output of concurrent browsers apart
+                annotators[i] = new ProvarConsoleAnnotator(listener.getLogger(),
+                        controllers.size() > 1 ? "[" + invocations.get(i).getGroup() + "] " : null, invocations.get(i).getFailFast());
+            }
+            return annotators[i];
+        }
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public String getFunctionName() {
+            return "runProvarAutomation";
+        }
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return Messages.ProvarAutomation_DescriptorImpl_DisplayName();
+        }
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return Set.of(Run.class, FilePath.class, Launcher.class, EnvVars.class, TaskListener.class, Node.class);
+        }
+
+        /**
+         * The form of the step is the one of the build step, validated and filled by its descriptor.
+         */
+        public ProvarAutomation.DescriptorImpl getBuilderDescriptor() {
+            return Jenkins.get().getDescriptorByType(ProvarAutomation.DescriptorImpl.class);
+        }
+    }
+}
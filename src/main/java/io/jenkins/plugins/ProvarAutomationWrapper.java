@@ -40,7 +40,6 @@ import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.slaves.NodeSpecific;
 import hudson.tasks.Ant;
-import hudson.tasks._ant.AntConsoleAnnotator;
 import hudson.tasks.BuildWrapperDescriptor;
 import hudson.tools.ToolInstallation;
 
@@ -121,7 +120,7 @@ public class ProvarAutomationWrapper extends SimpleBuildWrapper {
             if (computer != null) {
                 Node node = computer.getNode();
                 if (node != null) {
-                    inst = (ToolInstallation) ((NodeSpecific) inst).forNode(node, listener);
+                    inst = ProvarToolCache.forNode(inst, node, listener);
                 }
             }
         }
@@ -137,7 +136,7 @@ public class ProvarAutomationWrapper extends SimpleBuildWrapper {
 
     @Override
     public ConsoleLogFilter createLoggerDecorator(Run<?, ?> build) {
-        return AntConsoleAnnotator.asConsoleLogFilter();
+        return ProvarConsoleAnnotator.asConsoleLogFilter();
     }
 
     @Symbol("withProvarAutomation")
@@ -0,0 +1,203 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Skips {@code Provar-Compile} when the project inputs have not changed since the last compile.
+ * The inputs ({@code src}, {@code tests} and the {@code .testproject} file) are hashed together with the
+ * installation; the hash is written into the {@code bin} folder after a compile, and a copy of the compiled
+ * output is kept on the controller so other agents and fresh workspaces can reuse it.
+ */
+final class ProvarCompileCache implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    static final String OUTPUT_FOLDER = "bin";
+    /**
+     * Property the build file checks to skip its compile target.
+     */
+    static final String SKIP_PROPERTY = "provar.skipCompile";
+    private static final String MARKER = ".provar-compile-hash";
+    // one lock per entry of the controller store, so saving the output of one project does not wait for another
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private final FilePath projectPath;
+    private final String job;
+    private final String installation;
+    private String hash;
+    private boolean hit;
+
+    /**
+     * @param job full name of the job, output compiled by other jobs is never reused or removed
+     * @param installation identifies the Provar installation, compiled output of other versions is never reused
+     */
+    ProvarCompileCache(@NonNull FilePath projectPath, @NonNull String job, @NonNull String installation) {
+        this.projectPath = projectPath;
+        this.job = job;
+        this.installation = installation;
+    }
+
+    /**
+     * Checks the workspace, then the controller, for output compiled from the same inputs.
+     *
+     * @return whether the compile can be skipped
+     */
+    boolean prepare(@NonNull TaskListener listener) throws IOException, InterruptedException {
+        hash = projectPath.act(new InputHash(installation));
+        FilePath marker = projectPath.child(OUTPUT_FOLDER).child(MARKER);
+        if (marker.exists() && hash.equals(marker.readToString().trim())) {
+            listener.getLogger().println("Provar compile cache hit: project inputs unchanged (" + hash.substring(0, 12) + ")");
+            hit = true;
+            return true;
+        }
+        File snapshot = snapshot(hash);
+        if (snapshot.isFile()) {
+            FilePath output = projectPath.child(OUTPUT_FOLDER);
+            output.deleteRecursive();
+            try (InputStream in = Files.newInputStream(snapshot.toPath())) {
+                projectPath.untarFrom(in, FilePath.TarCompression.GZIP);
+            }
+            marker.write(hash, "UTF-8");
+            listener.getLogger().println("Provar compile cache hit: restored compiled output from the controller (" + hash.substring(0, 12) + ")");
+            hit = true;
+            return true;
+        }
+        listener.getLogger().println("Provar compile cache miss: compiling the project (" + hash.substring(0, 12) + ")");
+        return false;
+    }
+
+    /**
+     * After a run that compiled the project, records the hash and keeps a copy of the output.
+     * Only called once the compile succeeded, failing test cases do not matter.
+     */
+    void save(@NonNull TaskListener listener) throws IOException, InterruptedException {
+        FilePath output = projectPath.child(OUTPUT_FOLDER);
+        if (hit || hash == null || !output.isDirectory()) {
+            return;
+        }
+        output.child(MARKER).write(hash, "UTF-8");
+        File snapshot = snapshot(hash);
+        File dir = snapshot.getParentFile();
+        synchronized (LOCKS.computeIfAbsent(dir.getPath(), k -> new Object())) {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create " + dir);
+            }
+            // only the latest compiled output of the project in this job is kept
+            File[] older = dir.listFiles();
+            if (older != null) {
+                for (File f : older) {
+                    Files.deleteIfExists(f.toPath());
+                }
+            }
+            File temp = new File(dir, snapshot.getName() + ".tmp");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp.toPath()))) {
+                projectPath.tar(out, OUTPUT_FOLDER + "/**");
+            }
+            Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        listener.getLogger().println("Provar compile cache: saved compiled output (" + hash.substring(0, 12) + ")");
+    }
+
+    private File snapshot(String hash) {
+        String project = Util.getDigestOf(job + "\n" + projectPath.getName() + "\n" + installation);
+        return new File(new File(new File(Jenkins.get().getRootDir(), "provar-compile-cache"), project), hash + ".tgz");
+    }
+
+    /**
+     * SHA-256 over the paths and contents of the compile inputs of the project, and the installation.
+     */
+    static final class InputHash extends MasterToSlaveFileCallable<String> {
+        private static final long serialVersionUID = 1L;
+        private final String installation;
+
+        InputHash(String installation) {
+            this.installation = installation;
+        }
+
+        @Override
+        public String invoke(File projectDir, VirtualChannel channel) throws IOException {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+            digest.update(installation.getBytes(StandardCharsets.UTF_8));
+            Path root = projectDir.toPath();
+            List<Path> inputs = new ArrayList<>();
+            for (String folder : new String[] {"src", "tests"}) {
+                Path dir = root.resolve(folder);
+                if (Files.isDirectory(dir)) {
+                    try (Stream<Path> paths = Files.walk(dir)) {
+                        paths.filter(Files::isRegularFile).forEach(inputs::add);
+                    }
+                }
+            }
+            Path testProject = root.resolve(".testproject");
+            if (Files.isRegularFile(testProject)) {
+                inputs.add(testProject);
+            }
+            Collections.sort(inputs);
+            byte[] buffer = new byte[64 * 1024];
+            for (Path input : inputs) {
+                digest.update(root.relativize(input).toString().replace('\\', '/').getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                try (InputStream in = Files.newInputStream(input)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                    }
+                }
+            }
+            return Util.toHexString(digest.digest());
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.console.ConsoleLogFilter;
+import hudson.console.ConsoleNote;
+import hudson.console.LineTransformationOutputStream;
+import hudson.model.AbstractBuild;
+import hudson.model.Run;
+import hudson.tasks._ant.AntOutcomeNote;
+import hudson.tasks._ant.AntTargetNote;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Annotates the console output of Provar: test case starts, finishes and step failures,
+ * besides the Ant targets and outcome annotated by {@link hudson.tasks._ant.AntConsoleAnnotator}.
+ * Test case events that were kept out of a detailed log by {@link ProvarDetailedLogger} link to it.
+ *
+ * <p>Provar logs can be hundreds of MB, so lines are matched on their bytes without decoding them and without
+ * regular expressions. Notes carry no per-line state, so each kind is encoded once and the bytes are reused.
+ */
+public class ProvarConsoleAnnotator extends LineTransformationOutputStream {
+
+    private static final byte[] TASK_PREFIX = bytes("[Run-Test-Case]");
+    private static final byte[] BUILD_SUCCESSFUL = bytes("BUILD SUCCESSFUL");
+    private static final byte[] BUILD_FAILED = bytes("BUILD FAILED");
+    private static final byte[] LOG_MARKER = bytes(ProvarDetailedLogger.MARKER);
+
+    private static volatile byte[] targetNote;
+    private static volatile byte[] outcomeNote;
+
+    private final OutputStream out;
+    @CheckForNull
+    private final byte[] prefix;
+    @CheckForNull
+    private final ProvarFailFast failFast;
+    private boolean seenEmptyLine;
+    // for ProvarMetrics: bytes of output, and the time spent in the compile target
+    private long byteCount;
+    @CheckForNull
+    private String target;
+    private long targetStart;
+    private long compileMillis;
+
+    public ProvarConsoleAnnotator(@NonNull OutputStream out) {
+        this(out, null);
+    }
+
+    /**
+     * @param prefix written in front of every line, e.g. to tell concurrent invocations apart
+     */
+    public ProvarConsoleAnnotator(@NonNull OutputStream out, @CheckForNull String prefix) {
+        this(out, prefix, null);
+    }
+
+    /**
+     * @param failFast thresholds the test case outcomes in the output are counted against
+     */
+    ProvarConsoleAnnotator(@NonNull OutputStream out, @CheckForNull String prefix, @CheckForNull ProvarFailFast failFast) {
+        this.out = out;
+        this.prefix = prefix != null ? prefix.getBytes(StandardCharsets.UTF_8) : null;
+        this.failFast = failFast;
+    }
+
+    @Override
+    protected void eol(byte[] b, int len) throws IOException {
+        int end = len;
+        while (end > 0 && (b[end - 1] == '\n' || b[end - 1] == '\r')) {
+            end--;
+        }
+        byteCount += len;
+        byte[] note = null;
+        if (seenEmptyLine && end > 0 && b[end - 1] == ':' && indexOf(b, 0, end, (byte) ' ') < 0) {
+            note = targetNote();
+            endTarget();
+            target = new String(b, 0, end - 1, StandardCharsets.UTF_8);
+        } else if (equals(b, end, BUILD_SUCCESSFUL) || equals(b, end, BUILD_FAILED)) {
+            note = outcomeNote();
+            endTarget();
+        } else {
+            ProvarTestNote.Kind kind = testEvent(b, end);
+            if (kind != null) {
+                note = kind.encoded();
+                if (end > 0 && b[end - 1] == ']' && indexOf(b, 0, end, LOG_MARKER) >= 0) {
+                    // written by ProvarDetailedLogger, link to the line in the detailed log
+                    note = concat(note, ProvarLogNote.encoded());
+                }
+                if (failFast != null) {
+                    failFast.record(kind);
+                }
+            }
+        }
+        seenEmptyLine = end == 0;
+        if (prefix == null) {
+            if (note != null) {
+                out.write(note);
+            }
+            out.write(b, 0, len);
+            return;
+        }
+        // one write per line, so lines of concurrent invocations do not interleave
+        int noteLength = note != null ? note.length : 0;
+        byte[] line = new byte[noteLength + prefix.length + len];
+        if (note != null) {
+            System.arraycopy(note, 0, line, 0, noteLength);
+        }
+        System.arraycopy(prefix, 0, line, noteLength, prefix.length);
+        System.arraycopy(b, 0, line, noteLength + prefix.length, len);
+        out.write(line);
+    }
+
+    private void endTarget() {
+        long now = System.currentTimeMillis();
+        if (ProvarAutomation.COMPILE_TARGET.equals(target)) {
+            compileMillis += now - targetStart;
+        }
+        target = null;
+        targetStart = now;
+    }
+
+    /**
+     * Number of bytes of output annotated so far.
+     */
+    long getByteCount() { return byteCount; }
+
+    /**
+     * Milliseconds between the start of the {@code compile} target and the next target or the build outcome.
+     */
+    long getCompileMillis() { return compileMillis; }
+
+    /**
+     * Recognises a line of the {@code Run-Test-Case} task that reports a test case event.
+     */
+    @CheckForNull
+    static ProvarTestNote.Kind testEvent(byte[] b, int end) {
+        int start = 0;
+        while (start < end && (b[start] == ' ' || b[start] == '\t')) {
+            start++;
+        }
+        if (!regionMatches(b, start, end, TASK_PREFIX)) {
+            return null;
+        }
+        start += TASK_PREFIX.length;
+        for (ProvarTestNote.Kind kind : ProvarTestNote.Kind.values()) {
+            for (byte[] marker : kind.markers) {
+                if (indexOf(b, start, end, marker) >= 0) {
+                    return kind;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        out.close();
+    }
+
+    private static byte[] targetNote() throws IOException {
+        if (targetNote == null) {
+            targetNote = new AntTargetNote().encodeToBytes().toByteArray();
+        }
+        return targetNote;
+    }
+
+    private static byte[] outcomeNote() throws IOException {
+        if (outcomeNote == null) {
+            outcomeNote = new AntOutcomeNote().encodeToBytes().toByteArray();
+        }
+        return outcomeNote;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] both = new byte[a.length + b.length];
+        System.arraycopy(a, 0, both, 0, a.length);
+        System.arraycopy(b, 0, both, a.length, b.length);
+        return both;
+    }
+
+    static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static boolean equals(byte[] b, int end, byte[] expected) {
+        return end == expected.length && regionMatches(b, 0, end, expected);
+    }
+
+    private static boolean regionMatches(byte[] b, int from, int end, byte[] expected) {
+        if (end - from < expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (b[from + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] b, int from, int end, byte c) {
+        for (int i = from; i < end; i++) {
+            if (b[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] b, int from, int end, byte[] marker) {
+        byte first = marker[0];
+        for (int i = from, last = end - marker.length; i <= last; i++) {
+            if (b[i] == first && regionMatches(b, i, end, marker)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Annotates the console output of a whole build, e.g. from {@link ProvarAutomationWrapper}.
+     */
+    public static ConsoleLogFilter asConsoleLogFilter() {
+        return new ConsoleLogFilterImpl();
+    }
+
+    private static class ConsoleLogFilterImpl extends ConsoleLogFilter implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public OutputStream decorateLogger(AbstractBuild build, OutputStream logger) {
+            return new ProvarConsoleAnnotator(logger);
+        }
+
+        @Override
+        public OutputStream decorateLogger(Run build, OutputStream logger) {
+            return new ProvarConsoleAnnotator(logger);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Functions;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The detailed Provar logs of a build, written by {@link ProvarDetailedLogger} and archived in the build directory,
+ * one folder of gzip-compressed chunks per invocation. Test case events in the console link to
+ * {@code provar-log/view?log=name&chunk=n&offset=bytes}, which shows the chunk from that line on.
+ */
+public class ProvarDetailedLogAction implements RunAction2 {
+
+    static final String FOLDER = "provar-log";
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9_.-]*");
+
+    private transient Run<?, ?> run;
+
+    /**
+     * Returns the action of the run, creating it if needed.
+     */
+    @NonNull
+    static synchronized ProvarDetailedLogAction of(@NonNull Run<?, ?> run) {
+        ProvarDetailedLogAction action = run.getAction(ProvarDetailedLogAction.class);
+        if (action == null) {
+            action = new ProvarDetailedLogAction();
+            run.addAction(action);
+        }
+        return action;
+    }
+
+    /**
+     * Folder of the chunks of one invocation in the build directory.
+     */
+    @NonNull
+    static File dir(@NonNull Run<?, ?> run, @NonNull String log) {
+        return new File(new File(run.getRootDir(), FOLDER), log);
+    }
+
+    /**
+     * The logs of the build, with the number of chunks of each.
+     */
+    @NonNull
+    public List<Log> getLogs() {
+        List<Log> logs = new ArrayList<>();
+        File[] dirs = new File(run.getRootDir(), FOLDER).listFiles(File::isDirectory);
+        if (dirs != null) {
+            Arrays.sort(dirs);
+            for (File dir : dirs) {
+                int chunks = 0;
+                long size = 0;
+                for (File chunk; (chunk = new File(dir, ProvarDetailedLogger.chunkName(chunks + 1))).isFile(); chunks++) {
+                    size += chunk.length();
+                }
+                logs.add(new Log(dir.getName(), chunks, size));
+            }
+        }
+        return logs;
+    }
+
+    /**
+     * Shows a chunk, decompressed, from the given offset on.
+     */
+    public void doView(StaplerResponse rsp, @QueryParameter String log, @QueryParameter int chunk, @QueryParameter long offset)
+            throws IOException {
+        File file = log != null && NAME.matcher(log).matches() && chunk > 0
+                ? new File(dir(run, log), ProvarDetailedLogger.chunkName(chunk)) : null;
+        if (file == null || !file.isFile()) {
+            rsp.sendError(404);
+            return;
+        }
+        rsp.setContentType("text/plain;charset=UTF-8");
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file.toPath()), 65536)) {
+            for (long left = Math.max(offset, 0); left > 0; ) {
+                long skipped = in.skip(left);
+                if (skipped <= 0) {
+                    return;
+                }
+                left -= skipped;
+            }
+            OutputStream out = rsp.getOutputStream();
+            in.transferTo(out);
+        } catch (EOFException e) {
+            // the last chunk of a killed Provar ends at its last flush
+        }
+    }
+
+    public Run<?, ?> getRun() { return run; }
+
+    @Override
+    public void onAttached(Run<?, ?> r) { this.run = r; }
+
+    @Override
+    public void onLoad(Run<?, ?> r) { this.run = r; }
+
+    @Override
+    public String getIconFileName() { return "document.png"; }
+
+    @Override
+    public String getDisplayName() { return "Provar Detailed Log"; }
+
+    @Override
+    public String getUrlName() { return FOLDER; }
+
+    public static final class Log {
+        private final String name;
+        private final int chunks;
+        private final long size;
+
+        Log(String name, int chunks, long size) {
+            this.name = name;
+            this.chunks = chunks;
+            this.size = size;
+        }
+
+        public String getName() { return name; }
+
+        public int getChunks() { return chunks; }
+
+        /**
+         * Compressed size of the chunks, for display.
+         */
+        public String getSize() { return Functions.humanReadableByteSize(size); }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.DefaultLogger;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Ant logger that writes the whole output of Provar to gzip-compressed chunks on the agent and passes only
+ * the targets, the test case events and the outcome on to the console. Test case events end with a marker,
+ * {@code [provar-log:name:chunk:offset]}, giving the uncompressed offset of the line in its chunk, which
+ * {@link ProvarConsoleAnnotator} links to {@link ProvarDetailedLogAction}.
+ *
+ * <p>Loaded by Ant with {@code -lib} and {@code -logger}, so it must not use Jenkins classes. It is configured
+ * by environment variables since the Ant properties are not set yet when the build starts; without them it
+ * behaves like the {@link DefaultLogger}. A rerun of the same invocation continues after the existing chunks.
+ */
+public class ProvarDetailedLogger extends DefaultLogger {
+
+    static final String DIR_VARIABLE = "PROVAR_DETAILED_LOG";
+    static final String NAME_VARIABLE = "PROVAR_DETAILED_LOG_NAME";
+    static final String MARKER = "[provar-log:";
+    static final String CHUNK_PREFIX = "chunk-";
+    static final String CHUNK_SUFFIX = ".log.gz";
+    /**
+     * Uncompressed bytes after which a new chunk is started, so a link only has to decompress one chunk.
+     */
+    static final long CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private static final String TASK_PREFIX = "[Run-Test-Case]";
+    // the markers of ProvarTestNote.Kind, which cannot be loaded here
+    private static final String[] TEST_EVENTS = {
+            "Test Case Started", "Executing test case", "Test Case Successful", "Test Case Passed", "Test Case Failed", "Step Failed"
+    };
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final File dir;
+    private final String name;
+    private final long chunkSize;
+    private OutputStream chunk;
+    private int index;
+    private long offset;
+    // set while a target or the outcome is printed, which always go to the console
+    private boolean console;
+    // once a chunk cannot be written, everything goes to the console
+    private boolean failed;
+
+    public ProvarDetailedLogger() {
+        this(dir(System.getenv(DIR_VARIABLE)), System.getenv(NAME_VARIABLE), CHUNK_SIZE);
+    }
+
+    ProvarDetailedLogger(File dir, String name, long chunkSize) {
+        this.dir = dir;
+        this.name = name == null || name.isEmpty() ? "provar" : name;
+        this.chunkSize = chunkSize;
+        if (dir != null) {
+            // continue after the chunks of earlier runs
+            String[] existing = dir.list();
+            for (String file : existing != null ? existing : new String[0]) {
+                if (file.startsWith(CHUNK_PREFIX) && file.endsWith(CHUNK_SUFFIX)) {
+                    try {
+                        index = Math.max(index, Integer.parseInt(file.substring(CHUNK_PREFIX.length(), file.length() - CHUNK_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // not one of ours
+                    }
+                }
+            }
+        }
+    }
+
+    private static File dir(String path) {
+        return path == null || path.isEmpty() ? null : new File(path);
+    }
+
+    static String chunkName(int index) {
+        return CHUNK_PREFIX + index + CHUNK_SUFFIX;
+    }
+
+    @Override
+    public void targetStarted(BuildEvent event) {
+        console = true;
+        try {
+            super.targetStarted(event);
+        } finally {
+            console = false;
+        }
+    }
+
+    @Override
+    public void buildFinished(BuildEvent event) {
+        console = true;
+        try {
+            super.buildFinished(event);
+        } finally {
+            console = false;
+            close();
+        }
+    }
+
+    @Override
+    protected void printMessage(String message, PrintStream stream, int priority) {
+        if (dir == null || failed) {
+            super.printMessage(message, stream, priority);
+            return;
+        }
+        String marker;
+        try {
+            marker = write(message);
+        } catch (IOException e) {
+            // e.g. a full disk, keep Provar going and its output on the console
+            failed = true;
+            close();
+            stream.println("Unable to write the detailed Provar log, logging to the console instead: " + e);
+            super.printMessage(message, stream, priority);
+            return;
+        }
+        if (console) {
+            stream.println(message);
+        } else if (isTestEvent(message)) {
+            stream.println(message + " " + marker);
+        }
+    }
+
+    /**
+     * Appends a message to the current chunk.
+     *
+     * @return the marker of the message
+     */
+    private String write(String message) throws IOException {
+        if (chunk == null || offset >= chunkSize) {
+            close();
+            index++;
+            offset = 0;
+            chunk = new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(new File(dir, chunkName(index))), 65536, true), 65536);
+        }
+        String marker = MARKER + name + ":" + index + ":" + offset + "]";
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        chunk.write(bytes);
+        chunk.write(LINE_SEPARATOR);
+        offset += bytes.length + LINE_SEPARATOR.length;
+        if (console || isTestEvent(message)) {
+            // the log can be read up to the latest test case event even if Provar is killed
+            chunk.flush();
+        }
+        return marker;
+    }
+
+    private void close() {
+        if (chunk != null) {
+            try {
+                chunk.close();
+            } catch (IOException e) {
+                // the chunk is readable up to the last flush
+            }
+            chunk = null;
+        }
+    }
+
+    static boolean isTestEvent(String message) {
+        int task = message.indexOf(TASK_PREFIX);
+        if (task < 0 || message.indexOf('\n') >= 0) {
+            return false;
+        }
+        for (String event : TEST_EVENTS) {
+            if (message.indexOf(event, task + TASK_PREFIX.length()) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
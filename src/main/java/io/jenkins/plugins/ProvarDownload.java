@@ -0,0 +1,440 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Functions;
+import hudson.ProxyConfiguration;
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads a large file over several connections, each fetching byte ranges of it, into a staging file. The
+ * ranges completed so far are recorded next to the staging file, so a download that failed or was interrupted
+ * resumes with the missing ranges, as long as the file did not change on the server. Files without a strong ETag
+ * or a Last-Modified header are never resumed, since a change could not be noticed. Servers not supporting
+ * ranges, or sending the whole file for a range, are downloaded from in one piece. The caller verifies the
+ * checksum of the completed file.
+ */
+final class ProvarDownload {
+
+    static final ProvarDownload DEFAULT = new ProvarDownload(
+            SystemProperties.getInteger(ProvarDownload.class.getName() + ".connections", 4),
+            SystemProperties.getLong(ProvarDownload.class.getName() + ".chunkSize", 8L * 1024 * 1024),
+            SystemProperties.getInteger(ProvarDownload.class.getName() + ".attempts", 5));
+
+    // the ranges downloaded so far, next to the staging file
+    static final String STATE_SUFFIX = ".ranges";
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+    // an unreachable server or a stalled connection fails its range instead of hanging the installation
+    private static final int CONNECT_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(30);
+    private static final int READ_TIMEOUT = (int) TimeUnit.MINUTES.toMillis(1);
+
+    private final int connections;
+    private final long chunkSize;
+    private final int attempts;
+
+    ProvarDownload(int connections, long chunkSize, int attempts) {
+        this.connections = Math.max(connections, 1);
+        this.chunkSize = Math.max(chunkSize, 1);
+        this.attempts = Math.max(attempts, 1);
+    }
+
+    /**
+     * Downloads the URL to the staging file, resuming an earlier download to it if possible.
+     */
+    void download(@NonNull URL url, @NonNull File target, @NonNull TaskListener listener) throws IOException, InterruptedException {
+        File stateFile = stateFile(target);
+        Probe probe = probe(url);
+        if (probe == null) {
+            listener.getLogger().println("The server does not support ranges, downloading " + url + " in one piece");
+            Files.deleteIfExists(stateFile.toPath());
+            single(url, target);
+            return;
+        }
+        // without an ETag or Last-Modified, a changed file cannot be told apart, so nothing is resumed
+        boolean resumable = probe.validator != null;
+        State state = resumable ? State.read(stateFile) : null;
+        if (!resumable) {
+            Files.deleteIfExists(stateFile.toPath());
+        }
+        if (state != null && state.length == probe.length && state.chunkSize == chunkSize && Objects.equals(state.validator, probe.validator)
+                && target.length() == probe.length) {
+            listener.getLogger().println("Resuming the download of " + url + ", " + Functions.humanReadableByteSize(state.downloaded())
+                    + " of " + Functions.humanReadableByteSize(probe.length) + " were downloaded already");
+        } else {
+            state = new State(probe.length, chunkSize, probe.validator);
+            try (RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+                file.setLength(0);
+                file.setLength(probe.length);
+            }
+            if (resumable) {
+                state.write(stateFile);
+            }
+        }
+
+        List<Integer> pending = state.pending();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(connections, Math.max(pending.size(), 1)),
+                new NamingThreadFactory(new DaemonThreadFactory(), "ProvarDownload " + target.getName()));
+        Progress progress = new Progress(url, state.downloaded(), probe.length, listener);
+        boolean whole = false;
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.WRITE)) {
+            List<Future<?>> ranges = new ArrayList<>();
+            for (int chunk : pending) {
+                State s = state;
+                ranges.add(pool.submit(() -> {
+                    range(url, s, chunk, channel, progress);
+                    s.done(chunk, resumable ? stateFile : null);
+                    return null;
+                }));
+            }
+            for (Future<?> range : ranges) {
+                range.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (!(cause instanceof WholeFileException)) {
+                throw new IOException("Unable to download " + url + ": " + cause.getMessage(), cause);
+            }
+            listener.getLogger().println(cause.getMessage() + ", downloading it in one piece");
+            whole = true;
+        } finally {
+            pool.shutdownNow();
+        }
+        Files.deleteIfExists(stateFile.toPath());
+        if (whole) {
+            // the other ranges stop writing to the staging file before it is replaced
+            pool.awaitTermination(READ_TIMEOUT, TimeUnit.MILLISECONDS);
+            single(url, target);
+        }
+    }
+
+    /**
+     * Forgets a staging file, e.g. because its checksum did not match, so the next download starts over.
+     */
+    static void discard(@NonNull File target) throws IOException {
+        Files.deleteIfExists(target.toPath());
+        Files.deleteIfExists(stateFile(target).toPath());
+    }
+
+    private static File stateFile(File target) {
+        return new File(target.getPath() + STATE_SUFFIX);
+    }
+
+    private static URLConnection open(URL url) throws IOException {
+        URLConnection connection = ProxyConfiguration.open(url);
+        connection.setRequestProperty("User-Agent", ProvarInstallerCache.USER_AGENT);
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        return connection;
+    }
+
+    /**
+     * Asks for the first byte, to learn the length of the file and whether the server supports ranges.
+     */
+    @CheckForNull
+    private static Probe probe(URL url) throws IOException {
+        URLConnection connection = open(url);
+        if (!(connection instanceof HttpURLConnection)) {
+            return null;
+        }
+        HttpURLConnection http = (HttpURLConnection) connection;
+        http.setRequestProperty("Range", "bytes=0-0");
+        try {
+            if (http.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                return null;
+            }
+            Matcher m = CONTENT_RANGE.matcher(Util.fixNull(http.getHeaderField("Content-Range")));
+            if (!m.matches()) {
+                return null;
+            }
+            // If-Range only accepts a strong ETag, a weak one would always send the whole file
+            String validator = Util.fixEmpty(http.getHeaderField("ETag"));
+            if (validator != null && validator.startsWith("W/")) {
+                validator = null;
+            }
+            if (validator == null) {
+                validator = Util.fixEmpty(http.getHeaderField("Last-Modified"));
+            }
+            return new Probe(Long.parseLong(m.group(3)), validator);
+        } finally {
+            http.disconnect();
+        }
+    }
+
+    private static void single(URL url, File target) throws IOException {
+        try (InputStream in = open(url).getInputStream()) {
+            Files.copy(in, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Downloads a chunk of the file, trying again a few times if the connection fails.
+     */
+    private void range(URL url, State state, int chunk, FileChannel channel, Progress progress) throws IOException, InterruptedException {
+        long start = chunk * state.chunkSize;
+        long end = Math.min(start + state.chunkSize, state.length) - 1;
+        for (int attempt = 1; ; attempt++) {
+            long written = 0;
+            try {
+                HttpURLConnection http = (HttpURLConnection) open(url);
+                http.setRequestProperty("Range", "bytes=" + start + "-" + end);
+                if (state.validator != null) {
+                    // the server sends the whole file instead of the range if it changed meanwhile
+                    http.setRequestProperty("If-Range", state.validator);
+                }
+                try {
+                    int code = http.getResponseCode();
+                    if (code == HttpURLConnection.HTTP_OK) {
+                        throw new WholeFileException(url + " was sent in one piece instead of the range " + start + "-" + end);
+                    }
+                    Matcher m = CONTENT_RANGE.matcher(Util.fixNull(http.getHeaderField("Content-Range")));
+                    if (code != HttpURLConnection.HTTP_PARTIAL || !m.matches() || Long.parseLong(m.group(1)) != start
+                            || Long.parseLong(m.group(2)) != end) {
+                        throw new ChangedException(url + " changed on the server since the download started");
+                    }
+                    try (InputStream in = http.getInputStream()) {
+                        byte[] buffer = new byte[64 * 1024];
+                        int n;
+                        while (written <= end - start && (n = in.read(buffer, 0, (int) Math.min(buffer.length, end - start + 1 - written))) != -1) {
+                            ByteBuffer b = ByteBuffer.wrap(buffer, 0, n);
+                            while (b.hasRemaining()) {
+                                channel.write(b, start + written + b.position());
+                            }
+                            written += n;
+                            progress.add(n);
+                        }
+                    }
+                } finally {
+                    http.disconnect();
+                }
+                if (written != end - start + 1) {
+                    throw new IOException("Premature end of the range " + start + "-" + end + " after " + written + " bytes");
+                }
+                return;
+            } catch (ChangedException e) {
+                throw e;
+            } catch (IOException e) {
+                progress.add(-written);
+                if (attempt >= attempts) {
+                    throw e;
+                }
+                TimeUnit.SECONDS.sleep(attempt);
+            }
+        }
+    }
+
+    private static final class Probe {
+        private final long length;
+        @CheckForNull
+        private final String validator;
+
+        Probe(long length, @CheckForNull String validator) {
+            this.length = length;
+            this.validator = validator;
+        }
+    }
+
+    /**
+     * The file changed on the server since the download started, trying the range again does not help. The next
+     * download starts over, since the probe finds another validator.
+     */
+    private static class ChangedException extends IOException {
+        ChangedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The server sent the whole file instead of a range, because it changed meanwhile or the server ignores ranges
+     * after all, so the file is downloaded in one piece.
+     */
+    private static final class WholeFileException extends ChangedException {
+        WholeFileException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The length and the version of the file being downloaded, and which of its chunks are complete.
+     */
+    static final class State {
+        final long length;
+        final long chunkSize;
+        @CheckForNull
+        final String validator;
+        private final BitSet done;
+
+        State(long length, long chunkSize, @CheckForNull String validator) {
+            this(length, chunkSize, validator, new BitSet());
+        }
+
+        private State(long length, long chunkSize, @CheckForNull String validator, BitSet done) {
+            this.length = length;
+            this.chunkSize = chunkSize;
+            this.validator = validator;
+            this.done = done;
+        }
+
+        int chunks() {
+            return (int) ((length + chunkSize - 1) / chunkSize);
+        }
+
+        synchronized List<Integer> pending() {
+            List<Integer> pending = new ArrayList<>();
+            for (int chunk = done.nextClearBit(0); chunk < chunks(); chunk = done.nextClearBit(chunk + 1)) {
+                pending.add(chunk);
+            }
+            return pending;
+        }
+
+        synchronized long downloaded() {
+            long downloaded = 0;
+            for (int chunk = done.nextSetBit(0); chunk >= 0; chunk = done.nextSetBit(chunk + 1)) {
+                downloaded += Math.min(chunkSize, length - chunk * chunkSize);
+            }
+            return downloaded;
+        }
+
+        /**
+         * Records a complete chunk, once its bytes were written to the staging file.
+         *
+         * @param stateFile where to save the state, or {@code null} if the download cannot be resumed
+         */
+        synchronized void done(int chunk, @CheckForNull File stateFile) throws IOException {
+            done.set(chunk);
+            if (stateFile != null) {
+                write(stateFile);
+            }
+        }
+
+        synchronized void write(File stateFile) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("length", Long.toString(length));
+            properties.setProperty("chunkSize", Long.toString(chunkSize));
+            if (validator != null) {
+                properties.setProperty("validator", validator);
+            }
+            StringBuilder chunks = new StringBuilder();
+            for (int chunk = done.nextSetBit(0); chunk >= 0; chunk = done.nextSetBit(chunk + 1)) {
+                chunks.append(chunks.length() > 0 ? "," : "").append(chunk);
+            }
+            properties.setProperty("done", chunks.toString());
+            File temp = new File(stateFile.getPath() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+                properties.store(out, null);
+            }
+            Files.move(temp.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /**
+         * The state of an earlier download, or {@code null} if there is none or it is unreadable.
+         */
+        @CheckForNull
+        static State read(File stateFile) {
+            if (!stateFile.isFile()) {
+                return null;
+            }
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(stateFile.toPath())) {
+                properties.load(in);
+                BitSet done = new BitSet();
+                for (String chunk : properties.getProperty("done", "").split(",")) {
+                    if (!chunk.isEmpty()) {
+                        done.set(Integer.parseInt(chunk));
+                    }
+                }
+                return new State(Long.parseLong(properties.getProperty("length")), Long.parseLong(properties.getProperty("chunkSize")),
+                        properties.getProperty("validator"), done);
+            } catch (IOException | RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Reports every tenth of the file downloaded.
+     */
+    private static final class Progress {
+        private final URL url;
+        private final AtomicLong downloaded;
+        private final long length;
+        private final TaskListener listener;
+        private int reported;
+
+        Progress(URL url, long downloaded, long length, TaskListener listener) {
+            this.url = url;
+            this.downloaded = new AtomicLong(downloaded);
+            this.length = length;
+            this.listener = listener;
+            this.reported = percent(downloaded);
+        }
+
+        void add(long bytes) {
+            int percent = percent(downloaded.addAndGet(bytes));
+            synchronized (this) {
+                if (percent >= reported + 10) {
+                    reported = percent - percent % 10;
+                    listener.getLogger().println("Downloaded " + reported + "% of " + url);
+                }
+            }
+        }
+
+        private int percent(long bytes) {
+            return length == 0 ? 100 : (int) (bytes * 100 / length);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.io.Serializable;
+
+/**
+ * Failure thresholds of a Provar invocation, checked against the test case outcomes as they appear in the
+ * console output, so Provar can be stopped long before a broken environment has failed the whole suite.
+ */
+final class ProvarFailFast implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxFailures;
+    private final int percent;
+    private final int window;
+    private int finished;
+    private int failed;
+    @CheckForNull
+    private String reason;
+    private boolean stopped;
+    // called once when a threshold is reached, from the thread writing the output
+    @CheckForNull
+    private transient Runnable onTrip;
+
+    /**
+     * @param maxFailures number of failed test cases to stop at, 0 for no limit
+     * @param percent percentage of the first {@code window} test cases that may fail, 0 for no limit
+     * @param window number of test cases the percentage applies to
+     */
+    ProvarFailFast(int maxFailures, int percent, int window) {
+        this.maxFailures = maxFailures;
+        this.percent = percent;
+        this.window = window;
+    }
+
+    /**
+     * Thresholds of an invocation, or {@code null} if none are set.
+     */
+    @CheckForNull
+    static ProvarFailFast of(int maxFailures, int percent, int window) {
+        if (maxFailures <= 0 && (percent <= 0 || window <= 0)) {
+            return null;
+        }
+        return new ProvarFailFast(maxFailures, percent, window);
+    }
+
+    /**
+     * Sets what to do when a threshold is reached, running it right away if one already was.
+     */
+    void onTrip(@CheckForNull Runnable onTrip) {
+        boolean tripped;
+        synchronized (this) {
+            this.onTrip = onTrip;
+            tripped = reason != null;
+        }
+        if (tripped && onTrip != null) {
+            onTrip.run();
+        }
+    }
+
+    /**
+     * Counts a test case event seen in the output.
+     */
+    void record(@NonNull ProvarTestNote.Kind kind) {
+        Runnable trip;
+        synchronized (this) {
+            if (reason != null || (kind != ProvarTestNote.Kind.Passed && kind != ProvarTestNote.Kind.Failed)) {
+                return;
+            }
+            finished++;
+            if (kind == ProvarTestNote.Kind.Failed) {
+                failed++;
+            }
+            if (maxFailures > 0 && failed >= maxFailures) {
+                reason = failed + " test cases failed";
+            } else if (percent > 0 && finished <= window && failed * 100L >= (long) percent * window) {
+                // reached before the window is complete as soon as the remaining test cases cannot bring it below
+                reason = failed + " of the first " + finished + " test cases failed, at least " + percent + "% of " + window;
+            } else {
+                return;
+            }
+            trip = onTrip;
+        }
+        if (trip != null) {
+            trip.run();
+        }
+    }
+
+    /**
+     * Why a threshold was reached, or {@code null} if none was.
+     */
+    @CheckForNull
+    synchronized String getReason() { return reason; }
+
+    synchronized boolean isTripped() { return reason != null; }
+
+    /**
+     * Claims stopping Provar after a threshold was reached.
+     *
+     * @return whether the caller should stop it, only true once
+     */
+    synchronized boolean stop() {
+        if (reason == null || stopped) {
+            return false;
+        }
+        stopped = true;
+        return true;
+    }
+
+    /**
+     * Starts counting again, e.g. for a rerun of the failed test cases.
+     */
+    synchronized void reset() {
+        finished = 0;
+        failed = 0;
+        reason = null;
+        stopped = false;
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Project;
+import hudson.remoting.VirtualChannel;
+import hudson.util.FormValidation;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Test plans and test folders of the Provar project of each job, for the autocompletion and the validation of the
+ * configuration form. The folders are listed in the background from the last workspace of the job, re-listing only
+ * the folders modified since, and kept in memory for the most recently used jobs. Form requests only read the
+ * index, so they never wait for an agent.
+ */
+final class ProvarFolderIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(ProvarFolderIndex.class.getName());
+
+    static final String PLANS = "plans";
+    static final String TESTS = "tests";
+    // jobs whose index is kept in memory
+    static final int MAX_JOBS = SystemProperties.getInteger(ProvarFolderIndex.class.getName() + ".maxJobs", 200);
+    // folders listed per project, larger projects are indexed partially and not validated
+    static final int MAX_FOLDERS = SystemProperties.getInteger(ProvarFolderIndex.class.getName() + ".maxFolders", 10_000);
+    // an index older than this is refreshed in the background when a form reads it
+    static final long REFRESH_AFTER = TimeUnit.MINUTES.toMillis(5);
+    static final int MAX_CANDIDATES = 50;
+
+    // least recently used first
+    private static final Map<String, Entry> INDEXES = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_JOBS;
+        }
+    };
+
+    private ProvarFolderIndex() {}
+
+    /**
+     * Refreshes the index of a job in the background from the project folder a build ran in.
+     */
+    static void refreshLater(@NonNull Job<?, ?> job, @NonNull String projectName, @NonNull FilePath projectPath) {
+        Entry entry;
+        synchronized (INDEXES) {
+            entry = INDEXES.computeIfAbsent(job.getFullName(), k -> new Entry());
+        }
+        entry.refreshLater(projectName, projectPath);
+    }
+
+    /**
+     * The index of the job, if any, refreshing it in the background if it is old or missing.
+     */
+    @CheckForNull
+    static Snapshot of(@CheckForNull Item item) {
+        if (!(item instanceof Job)) {
+            return null;
+        }
+        Entry entry;
+        synchronized (INDEXES) {
+            entry = INDEXES.get(item.getFullName());
+            if (entry == null) {
+                if (!(item instanceof Project)) {
+                    // Pipeline jobs have no workspace to look at before a build ran the Provar step
+                    return null;
+                }
+                entry = new Entry();
+                INDEXES.put(item.getFullName(), entry);
+            }
+        }
+        if (entry.isStale()) {
+            Entry e = entry;
+            Timer.get().submit(() -> e.refresh(item));
+        }
+        return entry.snapshot;
+    }
+
+    /**
+     * Warns about a test plan or a test folder that is not in the project folder of the last build.
+     *
+     * @param root {@link #PLANS} or {@link #TESTS}
+     */
+    @NonNull
+    static FormValidation check(@CheckForNull Item item, @NonNull String root, @NonNull String value) {
+        Snapshot snapshot = of(item);
+        String path = normalize(value);
+        if (snapshot == null || snapshot.truncated || value.contains("$") || root.equals(TESTS) && value.equalsIgnoreCase("All")
+                || snapshot.contains(root, path)) {
+            return FormValidation.ok();
+        }
+        return FormValidation.warning(root.equals(PLANS) ? Messages.ProvarAutomation_UnknownTestPlan(value, snapshot.projectName)
+                : Messages.ProvarAutomation_UnknownTestFolder(value, snapshot.projectName));
+    }
+
+    /**
+     * Test plans or test folders starting like the value, for the autocompletion.
+     *
+     * @param root {@link #PLANS} or {@link #TESTS}
+     */
+    @NonNull
+    static List<String> candidates(@CheckForNull Item item, @NonNull String root, @NonNull String value) {
+        Snapshot snapshot = of(item);
+        if (snapshot == null) {
+            return Collections.emptyList();
+        }
+        String prefix = normalize(value).toLowerCase();
+        List<String> candidates = new ArrayList<>();
+        for (String path : snapshot.paths(root)) {
+            if (path.toLowerCase().startsWith(prefix)) {
+                candidates.add(path);
+                if (candidates.size() == MAX_CANDIDATES) {
+                    break;
+                }
+            }
+        }
+        return candidates;
+    }
+
+    @NonNull
+    static String normalize(@NonNull String value) {
+        String path = value.trim().replace('\\', '/');
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+
+    /**
+     * The index of a job and where it is refreshed from.
+     */
+    private static final class Entry {
+        @CheckForNull
+        private volatile Snapshot snapshot;
+        @CheckForNull
+        private String projectName;
+        @CheckForNull
+        private FilePath projectPath;
+        private long refreshed;
+        private boolean refreshing;
+        // a build asked for a refresh while one was running
+        private boolean again;
+
+        synchronized boolean isStale() {
+            return !refreshing && System.currentTimeMillis() - refreshed > REFRESH_AFTER;
+        }
+
+        void refreshLater(@NonNull String projectName, @NonNull FilePath projectPath) {
+            synchronized (this) {
+                this.projectName = projectName;
+                this.projectPath = projectPath;
+            }
+            Timer.get().submit(() -> refresh(null));
+        }
+
+        /**
+         * Lists the folders again, from the project folder of the last build, or else from the workspace of a freestyle job.
+         */
+        void refresh(@CheckForNull Item item) {
+            String name;
+            FilePath path;
+            Snapshot previous;
+            synchronized (this) {
+                if (refreshing) {
+                    again = item == null;
+                    return;
+                }
+                refreshing = true;
+                name = projectName;
+                path = projectPath;
+                previous = snapshot;
+            }
+            try {
+                if (path == null && item instanceof Project) {
+                    ProvarAutomation step = ((Project<?, ?>) item).getBuildersList().get(ProvarAutomation.class);
+                    name = step != null ? step.getProjectName() : null;
+                    FilePath workspace = name != null && !name.contains("$") ? ((Project<?, ?>) item).getSomeWorkspace() : null;
+                    if (workspace != null) {
+                        path = workspace.child(name);
+                    }
+                }
+                if (path != null) {
+                    Snapshot listed = path.act(new Lister(previous != null && name.equals(previous.projectName) ? previous : null, name));
+                    synchronized (this) {
+                        snapshot = listed;
+                        projectName = name;
+                        projectPath = path;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Unable to list the test plans and test folders of " + path, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                boolean refreshAgain;
+                synchronized (this) {
+                    refreshing = false;
+                    refreshed = System.currentTimeMillis();
+                    refreshAgain = again;
+                    again = false;
+                }
+                if (refreshAgain) {
+                    Timer.get().submit(() -> refresh(null));
+                }
+            }
+        }
+    }
+
+    /**
+     * The folders of {@code plans} and {@code tests} of a project, by path relative to the project folder.
+     */
+    static final class Snapshot implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String projectName;
+        final Map<String, Folder> folders;
+        final boolean truncated;
+
+        Snapshot(@NonNull String projectName, @NonNull Map<String, Folder> folders, boolean truncated) {
+            this.projectName = projectName;
+            this.folders = folders;
+            this.truncated = truncated;
+        }
+
+        boolean contains(@NonNull String root, @NonNull String path) {
+            return !path.isEmpty() && folders.containsKey(root + "/" + path);
+        }
+
+        /**
+         * The folders below the root, relative to it, sorted.
+         */
+        @NonNull
+        List<String> paths(@NonNull String root) {
+            TreeSet<String> paths = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            for (String path : folders.keySet()) {
+                if (path.startsWith(root + "/")) {
+                    paths.add(path.substring(root.length() + 1));
+                }
+            }
+            return new ArrayList<>(paths);
+        }
+    }
+
+    /**
+     * A listed folder: when it was modified and its subfolders.
+     */
+    static final class Folder implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final long modified;
+        final List<String> children;
+
+        Folder(long modified, @NonNull List<String> children) {
+            this.modified = modified;
+            this.children = children;
+        }
+    }
+
+    /**
+     * Lists the folders of {@code plans} and {@code tests} of the project folder it is evaluated against. Folders
+     * not modified since the previous snapshot keep their listing, since adding or removing a subfolder updates the
+     * modification time of its parent.
+     */
+    static final class Lister extends MasterToSlaveFileCallable<Snapshot> {
+        private static final long serialVersionUID = 1L;
+
+        @CheckForNull
+        private final Snapshot previous;
+        private final String projectName;
+
+        Lister(@CheckForNull Snapshot previous, @NonNull String projectName) {
+            this.previous = previous;
+            this.projectName = projectName;
+        }
+
+        @Override
+        public Snapshot invoke(File projectDir, VirtualChannel channel) {
+            Map<String, Folder> folders = new HashMap<>();
+            Deque<String> pending = new ArrayDeque<>(Arrays.asList(PLANS, TESTS));
+            boolean truncated = false;
+            while (!pending.isEmpty()) {
+                String path = pending.poll();
+                File dir = new File(projectDir, path);
+                long modified = dir.lastModified();
+                if (modified == 0 || !dir.isDirectory()) {
+                    continue;
+                }
+                Folder folder = previous != null ? previous.folders.get(path) : null;
+                if (folder == null || folder.modified != modified) {
+                    folder = new Folder(modified, list(dir));
+                }
+                folders.put(path, folder);
+                for (String child : folder.children) {
+                    if (folders.size() + pending.size() >= MAX_FOLDERS) {
+                        truncated = true;
+                        break;
+                    }
+                    pending.add(path + "/" + child);
+                }
+            }
+            return new Snapshot(projectName, folders, truncated);
+        }
+
+        private static List<String> list(File dir) {
+            File[] children = dir.listFiles(File::isDirectory);
+            List<String> names = new ArrayList<>();
+            if (children != null) {
+                for (File child : children) {
+                    if (!child.getName().startsWith(".")) {
+                        names.add(child.getName());
+                    }
+                }
+            }
+            Collections.sort(names);
+            return names;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.tools.DownloadFromUrlInstaller;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipFile;
+
+/**
+ * Keeps the Provar ANT archives on the controller (or in a local mirror directory), so each version is
+ * downloaded once and then streamed to the agents. Every archive has a SHA-256 sidecar file, checked
+ * before the archive is used. The sidecar is recorded once the archive opened as a zip.
+ * Archives are downloaded in parallel ranges by {@link ProvarDownload}, which resumes where a failed
+ * download stopped.
+ */
+final class ProvarInstallerCache {
+
+    /**
+     * Some hosts of the installers reject requests without a browser-like user agent.
+     */
+    static final String USER_AGENT = "Mozilla/5.0 (Windows; U; MSIE 9.0; Windows NT 9.0; en-US)";
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private ProvarInstallerCache() {}
+
+    /**
+     * Returns the verified archive of the installable, downloading it first if it is not cached.
+     *
+     * @param mirror directory on the controller holding the archives, the default cache is used when {@code null}
+     * @param checksum expected SHA-256 of the archive, or {@code null} to trust the checksum recorded on first download
+     */
+    @NonNull
+    static File fetch(@NonNull DownloadFromUrlInstaller.Installable installable, @CheckForNull String mirror,
+                      @CheckForNull String checksum, @NonNull TaskListener listener) throws IOException, InterruptedException {
+        File dir = mirror != null ? new File(mirror) : new File(Jenkins.get().getRootDir(), "caches/provar-installers");
+        String name = installable.id.replaceAll("[^A-Za-z0-9._-]", "_") + ".zip";
+        File archive = new File(dir, name);
+        File sidecar = new File(dir, name + ".sha256");
+        synchronized (LOCKS.computeIfAbsent(archive.getAbsolutePath(), k -> new Object())) {
+            if (archive.isFile()) {
+                String expected = checksum != null ? checksum : readChecksum(sidecar);
+                String actual = checksum(archive);
+                if (expected != null && expected.equalsIgnoreCase(actual)) {
+                    return archive;
+                }
+                if (expected == null && isZip(archive)) {
+                    Files.write(sidecar.toPath(), actual.getBytes(StandardCharsets.UTF_8));
+                    return archive;
+                }
+                listener.getLogger().println((expected == null ? "Invalid archive " : "Checksum mismatch for the cached ")
+                        + archive + ", downloading it again");
+                Files.delete(archive.toPath());
+            }
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create " + dir);
+            }
+            listener.getLogger().println("Downloading " + installable.url + " to the controller cache");
+            // kept if the download fails, so the next installation resumes it
+            File temp = new File(dir, name + ".part");
+            ProvarDownload.DEFAULT.download(new URL(installable.url), temp, listener);
+            String actual = checksum(temp);
+            if (checksum != null && !checksum.equalsIgnoreCase(actual)) {
+                ProvarDownload.discard(temp);
+                throw new IOException("Checksum mismatch for " + installable.url + ": expected " + checksum + " but was " + actual);
+            }
+            // a truncated or mixed up download must never be recorded as good
+            if (!isZip(temp)) {
+                ProvarDownload.discard(temp);
+                throw new IOException(installable.url + " did not download as a valid zip archive");
+            }
+            Files.move(temp.toPath(), archive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.write(sidecar.toPath(), actual.getBytes(StandardCharsets.UTF_8));
+            return archive;
+        }
+    }
+
+    private static boolean isZip(File file) {
+        // opening reads the central directory at the end of the archive
+        try (ZipFile zip = new ZipFile(file)) {
+            return zip.size() > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @CheckForNull
+    private static String readChecksum(File sidecar) throws IOException {
+        if (!sidecar.isFile()) {
+            return null;
+        }
+        return Util.fixEmptyAndTrim(new String(Files.readAllBytes(sidecar.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @NonNull
+    static String checksum(@NonNull File file) throws IOException {
+        return ProvarMetadataCache.Checksums.checksum(file.toPath(), new byte[64 * 1024]);
+    }
+}
@@ -0,0 +1,480 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.util.DirScanner;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.ArgumentListBuilder;
+import hudson.util.Secret;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An Ant invocation of Provar prepared by {@link ProvarAutomation#prepare}: the command and its environment,
+ * and what has to happen once it exits. Serializable so a Pipeline step can finish it after a controller restart.
+ */
+final class ProvarInvocation implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // the Ant command line, masked arguments such as the secrets password kept encrypted so the saved
+    // execution of a Pipeline step does not hold them in plain text
+    private final List<String> args = new ArrayList<>();
+    private final Map<Integer, String> maskedArgs = new HashMap<>();
+    // the environment of the process, not saved: for a Pipeline step it holds the variables bound by
+    // withCredentials and the like, so it is rebuilt from the step context after a restart
+    @CheckForNull
+    private transient EnvVars env;
+    // what the plugin set on top of the environment of the build, saved instead of the whole environment
+    private final Map<String, String> variables = new TreeMap<>();
+    private final FilePath workingDirectory;
+    @CheckForNull
+    private final FilePath includesFile;
+    @CheckForNull
+    private final String group;
+    // replaced when failed test cases are rerun, read by the timer polling the results
+    private volatile ProvarResultsWatcher watcher;
+    private final ProvarResultsRetention retention;
+    @CheckForNull
+    private final ProvarCompileCache compileCache;
+    @CheckForNull
+    private final ProvarMetadataCache metadataCache;
+    private final FilePath metadataCacheDir;
+    // failed test cases are rerun up to this many more times, narrowing TEST_CASES_FILE down to them
+    private int rerunsLeft;
+    @CheckForNull
+    private FilePath tempDir;
+    @CheckForNull
+    private FilePath rerunFile;
+    private int attempt = 1;
+    @CheckForNull
+    private ProvarFailFast failFast;
+    private final ProvarMetrics metrics = new ProvarMetrics();
+    // folder of the chunks of the detailed log on the agent, until they are archived
+    @CheckForNull
+    private FilePath detailedLog;
+    // when Ant was first launched, to time the test execution across reruns and controller restarts
+    private long startedAt;
+    // agent time of the first run, the Results folders written since are published
+    private final long resultsSince;
+    private boolean publishResults;
+    // the agent, installation and environment recorded for the agent affinity of the job
+    @CheckForNull
+    private String node;
+    private String installation;
+    private String environment;
+    // latest outcome by test case, once failed test cases were rerun
+    private final Map<String, ProvarTestResult> outcomes = new LinkedHashMap<>();
+
+    /**
+     * @param base the environment of the build, as given to {@link ProvarAutomation#prepare}
+     * @param env the environment of the process, {@code base} with the variables of the plugin
+     */
+    ProvarInvocation(@NonNull ArgumentListBuilder args, @NonNull EnvVars base, @NonNull EnvVars env, @NonNull FilePath workingDirectory,
+                     @CheckForNull FilePath includesFile, @CheckForNull String group, @NonNull ProvarResultsWatcher watcher,
+                     @NonNull ProvarResultsRetention retention, @CheckForNull ProvarCompileCache compileCache,
+                     @CheckForNull ProvarMetadataCache metadataCache, @NonNull FilePath metadataCacheDir) {
+        List<String> list = args.toList();
+        boolean[] masks = args.toMaskArray();
+        for (int i = 0; i < list.size(); i++) {
+            if (masks[i]) {
+                maskedArgs.put(i, Secret.fromString(list.get(i)).getEncryptedValue());
+            }
+            this.args.add(list.get(i));
+        }
+        for (Integer i : maskedArgs.keySet()) {
+            this.args.set(i, "");
+        }
+        this.env = env;
+        for (Map.Entry<String, String> e : env.entrySet()) {
+            if (!e.getValue().equals(base.get(e.getKey()))) {
+                variables.put(e.getKey(), e.getValue());
+            }
+        }
+        this.workingDirectory = workingDirectory;
+        this.includesFile = includesFile;
+        this.group = group;
+        this.watcher = watcher;
+        this.resultsSince = watcher.getSince();
+        this.retention = retention;
+        this.compileCache = compileCache;
+        this.metadataCache = metadataCache;
+        this.metadataCacheDir = metadataCacheDir;
+    }
+
+    /**
+     * The Ant command line, before any conversion for Windows.
+     */
+    @NonNull
+    ArgumentListBuilder getArgs() {
+        ArgumentListBuilder result = new ArgumentListBuilder();
+        for (int i = 0; i < args.size(); i++) {
+            String encrypted = maskedArgs.get(i);
+            if (encrypted == null) {
+                result.add(args.get(i));
+            } else {
+                result.addMasked(Secret.decrypt(encrypted));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The environment of the process, see {@link #restoreEnv(EnvVars)}.
+     */
+    @NonNull
+    EnvVars getEnv() {
+        if (env == null) {
+            throw new IllegalStateException("The environment of the build was not restored");
+        }
+        return env;
+    }
+
+    /**
+     * Rebuilds the environment of the process from the environment of the build, e.g. after a controller restart.
+     */
+    void restoreEnv(@NonNull EnvVars base) {
+        if (env == null) {
+            EnvVars restored = new EnvVars(base);
+            restored.putAll(variables);
+            env = restored;
+        }
+    }
+
+    @NonNull
+    Map<String, String> getVariables() { return Collections.unmodifiableMap(variables); }
+
+    private void setVariable(String name, String value) {
+        getEnv().put(name, value);
+        variables.put(name, value);
+    }
+
+    @NonNull
+    FilePath getWorkingDirectory() { return workingDirectory; }
+
+    @NonNull
+    ProvarResultsWatcher getWatcher() { return watcher; }
+
+    /**
+     * The group of the results, the shard and/or the browser.
+     */
+    @CheckForNull
+    String getGroup() { return group; }
+
+    /**
+     * Reruns the test cases that failed, up to the given number of times.
+     *
+     * @param tempDir where the test selection of the reruns is written
+     */
+    void setReruns(int reruns, @NonNull FilePath tempDir) {
+        this.rerunsLeft = reruns;
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * Records whether the invocation left a warm metadata cache on the agent, see {@link ProvarAgentAffinity}.
+     */
+    void setAffinity(@NonNull String node, @CheckForNull String installation, @CheckForNull String environment) {
+        this.node = node;
+        this.installation = Util.fixNull(installation);
+        this.environment = Util.fixNull(environment);
+    }
+
+    /**
+     * Stores the Results folders of every run with the build once the invocation finished, see {@link ProvarResultsStore}.
+     */
+    void setPublishResults(boolean publishResults) {
+        this.publishResults = publishResults;
+    }
+
+    /**
+     * Timings and counters of the invocation, published when it finishes.
+     */
+    @NonNull
+    ProvarMetrics getMetrics() { return metrics; }
+
+    /**
+     * Marks the (first) launch of Ant.
+     */
+    void started() {
+        if (startedAt == 0) {
+            startedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Adds what the console annotator measured while Ant ran.
+     */
+    void measured(@NonNull ProvarConsoleAnnotator annotator) {
+        metrics.count(ProvarMetrics.Counter.OutputBytes, annotator.getByteCount());
+        metrics.add(ProvarMetrics.Phase.Compile, annotator.getCompileMillis());
+    }
+
+    /**
+     * Failure thresholds to stop Provar at, see {@link ProvarConsoleAnnotator}.
+     */
+    @CheckForNull
+    ProvarFailFast getFailFast() { return failFast; }
+
+    void setFailFast(@CheckForNull ProvarFailFast failFast) {
+        this.failFast = failFast;
+    }
+
+    /**
+     * Keeps the output of Ant out of the console: {@link ProvarDetailedLogger} writes it to a folder of the
+     * temporary directory and only passes the targets, the test case events and the outcome on.
+     */
+    void offloadLog(@NonNull FilePath tempDir) throws IOException, InterruptedException {
+        detailedLog = tempDir.createTempDir("provar-log", null);
+        FilePath jar = detailedLog.child("provar-logger.jar");
+        jar.copyFrom(new ByteArrayInputStream(ProvarRunner.jar(ProvarDetailedLogger.class)));
+        Collections.addAll(args, "-lib", jar.getRemote(), "-logger", ProvarDetailedLogger.class.getName());
+        setVariable(ProvarDetailedLogger.DIR_VARIABLE, detailedLog.getRemote());
+        setVariable(ProvarDetailedLogger.NAME_VARIABLE, folderName());
+    }
+
+    /**
+     * Whether the output of Ant goes to a detailed log, see {@link #offloadLog}.
+     */
+    boolean isLogOffloaded() { return detailedLog != null; }
+
+    /**
+     * Copies the chunks of the detailed log, already compressed, to the build and removes them from the agent.
+     * Called once Ant exited for good, also when the build was aborted.
+     */
+    void archiveLog(@NonNull Run<?, ?> build, @NonNull TaskListener listener) throws InterruptedException {
+        if (detailedLog == null) {
+            return;
+        }
+        try {
+            int chunks = detailedLog.copyRecursiveTo(new DirScanner.Glob(ProvarDetailedLogger.CHUNK_PREFIX + "*" + ProvarDetailedLogger.CHUNK_SUFFIX, null),
+                    new FilePath(ProvarDetailedLogAction.dir(build, folderName())), "detailed Provar log", FilePath.TarCompression.NONE);
+            ProvarDetailedLogAction.of(build);
+            listener.getLogger().println(prefix() + "Detailed Provar log: " + chunks + " chunks archived with the build");
+            detailedLog.deleteRecursive();
+            detailedLog = null;
+        } catch (IOException e) {
+            listener.getLogger().println(prefix() + "Unable to archive the detailed Provar log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * After a failed run, narrows the test selection down to the test cases that failed and skips the compile,
+     * so the invocation can be launched again.
+     *
+     * @return whether to launch the invocation again
+     */
+    boolean rerun(int exitCode, @NonNull TaskListener listener) throws IOException, InterruptedException {
+        if (exitCode == 0 || rerunsLeft <= 0 || tempDir == null) {
+            return false;
+        }
+        if (failFast != null && failFast.isTripped()) {
+            // stopped early, rerunning would only fail the same way
+            return false;
+        }
+        List<ProvarTestResult> results;
+        try {
+            watcher.poll();
+            results = watcher.results();
+        } catch (IOException e) {
+            listener.getLogger().println(prefix() + "Unable to read the Provar results, not rerunning failed tests: " + e.getMessage());
+            return false;
+        }
+        List<String> failed = new ArrayList<>();
+        for (ProvarTestResult result : results) {
+            if (result.getStatus() == ProvarTestResult.Status.Failed) {
+                failed.add(result.getName());
+            }
+        }
+        if (failed.isEmpty()) {
+            listener.getLogger().println(prefix() + "No failed test cases in the results, not rerunning");
+            return false;
+        }
+        merge(results);
+        rerunsLeft--;
+        attempt++;
+        // the JUnit output only has the names of the test cases, so match them in any folder
+        List<String> includes = new ArrayList<>();
+        for (String name : failed) {
+            includes.add("**/" + name + ".testcase");
+        }
+        if (rerunFile == null) {
+            rerunFile = tempDir.createTextTempFile("provar-rerun", ".txt", ProvarTestShards.includes(includes));
+        } else {
+            rerunFile.write(ProvarTestShards.includes(includes), "UTF-8");
+        }
+        setVariable("TEST_CASES_FILE", rerunFile.getRemote());
+        String skipCompile = "-D" + ProvarCompileCache.SKIP_PROPERTY + "=true";
+        if (!args.contains(skipCompile)) {
+            args.add(skipCompile);
+        }
+        watcher = watcher.restart(failed.size());
+        if (failFast != null) {
+            failFast.reset();
+        }
+        listener.getLogger().println(prefix() + "Rerunning " + failed.size() + " failed test cases, attempt " + attempt + ": " + failed);
+        return true;
+    }
+
+    /**
+     * Keeps the latest outcome of every test case, counting how many times it ran.
+     */
+    private void merge(List<ProvarTestResult> results) {
+        for (ProvarTestResult result : results) {
+            ProvarTestResult previous = outcomes.get(result.getName());
+            outcomes.put(result.getName(), result.withAttempts(previous == null ? 1 : previous.getAttempts() + 1));
+        }
+    }
+
+    /**
+     * Name of the folders of the invocation in the build directory, usable in a path and a URL.
+     */
+    @NonNull
+    String folderName() {
+        return group == null ? "provar" : group.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+
+    private String prefix() {
+        return group == null ? "" : "[" + group + "] ";
+    }
+
+    /**
+     * Removes the temporary files of the invocation, whether or not Ant could be launched.
+     */
+    void cleanUp() throws IOException, InterruptedException {
+        if (includesFile != null) {
+            includesFile.delete();
+        }
+        if (rerunFile != null) {
+            rerunFile.delete();
+        }
+        if (detailedLog != null) {
+            detailedLog.deleteRecursive();
+        }
+    }
+
+    /**
+     * Records the results of the finished invocation and updates the caches.
+     *
+     * @return whether Ant succeeded
+     */
+    boolean finish(@NonNull Run<?, ?> build, int exitCode, @NonNull TaskListener listener) throws IOException, InterruptedException {
+        if (startedAt != 0) {
+            metrics.time(ProvarMetrics.Phase.TestExecution, startedAt);
+        }
+        ProvarResultsAction resultsAction = ProvarResultsAction.of(build);
+        long parsing = System.currentTimeMillis();
+        List<ProvarTestResult> results = recordResults(build, resultsAction, listener);
+        metrics.time(ProvarMetrics.Phase.ResultParsing, parsing);
+        if (publishResults) {
+            try {
+                ProvarResultsStore.publish(build, watcher.getAntDir(), resultsSince, folderName(), listener);
+            } catch (IOException e) {
+                listener.getLogger().println(prefix() + "Unable to publish the Results folder: " + e.getMessage());
+            }
+        }
+        if (retention.isEnabled()) {
+            listener.getLogger().println("Cleaning up older Results folders in the background");
+            retention.applyLater(build, watcher.getAntDir(), resultsAction);
+        }
+        // the test target depends on the compile target, so test results mean the compile succeeded even if tests failed
+        if (compileCache != null && (exitCode == 0 || !results.isEmpty())) {
+            compileCache.save(listener);
+        }
+        if (metadataCache != null) {
+            try {
+                metadataCache.snapshot(metadataCacheDir, listener);
+            } catch (IOException e) {
+                listener.getLogger().println("Unable to save the Salesforce metadata cache: " + e.getMessage());
+            }
+        }
+        if (node != null) {
+            try {
+                ProvarAgentAffinity.get().record(build.getParent(), node, installation, environment, metadataCacheDir.exists());
+            } catch (IOException e) {
+                listener.getLogger().println("Unable to check the Salesforce metadata cache: " + e.getMessage());
+            }
+        }
+        ProvarMetricsAction.record(build, metrics);
+        return exitCode == 0;
+    }
+
+    /**
+     * Adds the final outcome of the Results folder to the {@link ProvarResultsAction} of the build
+     * and the test durations to its {@link ProvarTestTimings}.
+     *
+     * @return the outcome of every test case
+     */
+    private List<ProvarTestResult> recordResults(Run<?, ?> build, ProvarResultsAction resultsAction, TaskListener listener) throws InterruptedException {
+        List<ProvarTestResult> results = Collections.emptyList();
+        try {
+            watcher.attach(resultsAction).poll();
+            results = watcher.results();
+        } catch (IOException e) {
+            listener.getLogger().println("Unable to read the Provar results: " + e.getMessage());
+        }
+        if (attempt > 1) {
+            merge(results);
+            results = new ArrayList<>(outcomes.values());
+            List<String> flaky = new ArrayList<>();
+            List<String> failed = new ArrayList<>();
+            for (ProvarTestResult result : results) {
+                if (result.isFlaky()) {
+                    flaky.add(result.getName());
+                } else if (result.getStatus() == ProvarTestResult.Status.Failed && result.getAttempts() > 1) {
+                    failed.add(result.getName());
+                }
+            }
+            listener.getLogger().println(prefix() + "Flaky test cases, passed on rerun: " + flaky);
+            listener.getLogger().println(prefix() + "Test cases failed in every attempt: " + failed);
+        }
+        resultsAction.add(group, results);
+        metrics.count(ProvarMetrics.Counter.Tests, results.size());
+        for (ProvarTestResult result : results) {
+            if (result.getStatus() == ProvarTestResult.Status.Failed) {
+                metrics.count(ProvarMetrics.Counter.FailedTests, 1);
+            }
+        }
+        if (!results.isEmpty()) {
+            ProvarTestTimings.of(build).record(results);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows on the build page how long the Provar steps of a build waited for license seats, see {@link ProvarLicenseSeats},
+ * and the place in the queue while a step is waiting.
+ */
+public class ProvarLicenseAction implements RunAction2 {
+
+    private final List<Wait> waits = new ArrayList<>();
+    @CheckForNull
+    private transient ProvarLicenseSeats.Request request;
+    private transient Run<?, ?> run;
+
+    /**
+     * Returns the action of the run, creating it if needed.
+     */
+    @NonNull
+    static synchronized ProvarLicenseAction of(@NonNull Run<?, ?> run) {
+        ProvarLicenseAction action = run.getAction(ProvarLicenseAction.class);
+        if (action == null) {
+            action = new ProvarLicenseAction();
+            run.addAction(action);
+        }
+        return action;
+    }
+
+    synchronized void waiting(@NonNull ProvarLicenseSeats.Request request) {
+        this.request = request;
+    }
+
+    synchronized void granted(@NonNull String license, int seats, long waited) {
+        request = null;
+        waits.add(new Wait(license, seats, waited));
+    }
+
+    /**
+     * Describes the request still waiting for seats, if any.
+     */
+    @CheckForNull
+    public synchronized String getWaiting() {
+        if (request == null || request.future.isDone()) {
+            return null;
+        }
+        return request + ", " + request.position() + " builds ahead";
+    }
+
+    @NonNull
+    public synchronized List<Wait> getWaits() { return new ArrayList<>(waits); }
+
+    public Run<?, ?> getRun() { return run; }
+
+    @Override
+    public void onAttached(Run<?, ?> r) { this.run = r; }
+
+    @Override
+    public void onLoad(Run<?, ?> r) { this.run = r; }
+
+    // only shown in the summary of the build
+    @Override
+    public String getIconFileName() { return null; }
+
+    @Override
+    public String getDisplayName() { return "Provar License Seats"; }
+
+    @Override
+    public String getUrlName() { return null; }
+
+    public static final class Wait {
+        private final String license;
+        private final int seats;
+        private final long millis;
+
+        Wait(String license, int seats, long millis) {
+            this.license = license;
+            this.seats = seats;
+            this.millis = millis;
+        }
+
+        public String getLicense() { return license; }
+
+        public int getSeats() { return seats; }
+
+        public long getMillis() { return millis; }
+
+        public String getDuration() { return Util.getTimeSpanString(millis); }
+    }
+}
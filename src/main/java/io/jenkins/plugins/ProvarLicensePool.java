@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.verb.POST;
+
+/**
+ * The execution license seats of one license path (or key), shared by all Provar steps of the controller,
+ * see {@link ProvarLicensePools}.
+ */
+public class ProvarLicensePool extends AbstractDescribableImpl<ProvarLicensePool> {
+
+    @NonNull
+    private final String licensePath;
+    private final int seats;
+
+    @DataBoundConstructor
+    public ProvarLicensePool(@NonNull String licensePath, int seats) {
+        this.licensePath = Util.fixNull(licensePath).trim();
+        this.seats = Math.max(seats, 1);
+    }
+
+    @NonNull
+    public String getLicensePath() { return licensePath; }
+
+    public int getSeats() { return seats; }
+
+    /**
+     * Whether builds passing the given license path use this pool.
+     */
+    boolean matches(@NonNull String license) {
+        return normalize(licensePath).equals(normalize(license));
+    }
+
+    private static String normalize(String path) {
+        String normalized = path.trim().replace('\\', '/');
+        while (normalized.length() > 1 && normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends Descriptor<ProvarLicensePool> {
+
+        @POST
+        public FormValidation doCheckLicensePath(@QueryParameter String value) {
+            Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            if (Util.fixEmptyAndTrim(value) == null) {
+                return FormValidation.error(Messages.ProvarAutomation_LicensePathNeeded());
+            }
+            return FormValidation.ok();
+        }
+
+        @POST
+        public FormValidation doCheckSeats(@QueryParameter String value) {
+            Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            try {
+                if (Integer.parseInt(value.trim()) >= 1) {
+                    return FormValidation.ok();
+                }
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+            return FormValidation.error(Messages.ProvarAutomation_InvalidSeats());
+        }
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Provar License Pool";
+        }
+    }
+}
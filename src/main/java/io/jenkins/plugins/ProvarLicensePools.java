@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import jenkins.model.GlobalConfiguration;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * License pools of the controller, in <em>Manage Jenkins » System</em>. A Provar step whose license path has a pool
+ * waits for a free seat before launching Ant, instead of failing once more builds run than there are licenses.
+ */
+@Extension
+@Symbol("provarLicensePools")
+public class ProvarLicensePools extends GlobalConfiguration {
+
+    private volatile List<ProvarLicensePool> pools = new ArrayList<>();
+
+    public ProvarLicensePools() {
+        load();
+    }
+
+    @NonNull
+    static ProvarLicensePools get() {
+        return ExtensionList.lookupSingleton(ProvarLicensePools.class);
+    }
+
+    @NonNull
+    public List<ProvarLicensePool> getPools() { return pools; }
+
+    @DataBoundSetter
+    public void setPools(List<ProvarLicensePool> pools) {
+        this.pools = pools != null ? new ArrayList<>(pools) : new ArrayList<>();
+        save();
+    }
+
+    /**
+     * The pool of a license path, if any.
+     */
+    @CheckForNull
+    ProvarLicensePool find(@NonNull String license) {
+        for (ProvarLicensePool pool : pools) {
+            if (pool.matches(license)) {
+                return pool;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.ToIntFunction;
+
+/**
+ * Hands out the seats of the {@link ProvarLicensePools license pools} of the controller. Requests for a license wait
+ * in a first-in, first-out queue: a request only gets its seats once the requests ahead of it got theirs, so builds
+ * needing several seats (one per concurrent browser) are not overtaken forever by builds needing one.
+ * Seats are held by a {@link Lease}, which survives a controller restart with the Pipeline step holding it.
+ */
+final class ProvarLicenseSeats {
+
+    private static final ProvarLicenseSeats INSTANCE = new ProvarLicenseSeats(key -> {
+        ProvarLicensePool pool = ProvarLicensePools.get().find(key);
+        return pool != null ? pool.getSeats() : -1;
+    });
+
+    // seats of a license, -1 if the license has no pool
+    private final ToIntFunction<String> capacity;
+    private final Map<String, Queue> queues = new HashMap<>();
+
+    ProvarLicenseSeats(@NonNull ToIntFunction<String> capacity) {
+        this.capacity = capacity;
+    }
+
+    @NonNull
+    static ProvarLicenseSeats get() { return INSTANCE; }
+
+    private static final class Queue {
+        private int held;
+        private final Deque<Request> waiting = new ArrayDeque<>();
+    }
+
+    /**
+     * Asks for seats of a license.
+     *
+     * @param license the license path (or key) the build passes to Provar
+     * @param owner the build, for messages
+     * @return the request, or {@code null} if the license has no pool
+     * @throws AbortException if the pool has fewer seats than requested
+     */
+    @CheckForNull
+    Request request(@NonNull String license, int seats, @NonNull String owner) throws AbortException {
+        int max = capacity.applyAsInt(license);
+        if (max < 0) {
+            return null;
+        }
+        if (seats > max) {
+            throw new AbortException(Messages.ProvarAutomation_NotEnoughSeats(seats, license, max));
+        }
+        Request request = new Request(license, seats, owner);
+        List<Request> granted;
+        synchronized (this) {
+            queues.computeIfAbsent(license, k -> new Queue()).waiting.add(request);
+            granted = grant(license);
+        }
+        complete(granted);
+        return request;
+    }
+
+    /**
+     * Waits for seats of a license, blocking the thread, e.g. of a build step.
+     *
+     * @return the lease of the seats, or {@code null} if the license has no pool
+     */
+    @CheckForNull
+    Lease acquire(@NonNull Run<?, ?> build, @NonNull String license, int seats, @NonNull TaskListener listener)
+            throws InterruptedException, AbortException {
+        Request request = request(license, seats, build.getFullDisplayName());
+        if (request == null) {
+            return null;
+        }
+        request.waiting(build, listener);
+        try {
+            return request.future.get().record(build, listener);
+        } catch (InterruptedException e) {
+            request.cancel();
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Takes the seats of a lease again after a restart, whether or not they are free, since Provar is already running.
+     */
+    private synchronized void reclaim(@NonNull Lease lease) {
+        queues.computeIfAbsent(lease.license, k -> new Queue()).held += lease.seats;
+    }
+
+    private void release(@NonNull Lease lease) {
+        List<Request> granted;
+        synchronized (this) {
+            Queue queue = queues.get(lease.license);
+            if (queue == null) {
+                return;
+            }
+            queue.held = Math.max(queue.held - lease.seats, 0);
+            granted = grant(lease.license);
+        }
+        complete(granted);
+    }
+
+    /**
+     * Seats of the license held by running builds.
+     */
+    synchronized int held(@NonNull String license) {
+        Queue queue = queues.get(license);
+        return queue == null ? 0 : queue.held;
+    }
+
+    /**
+     * Takes the seats of the requests at the head of the queue while they fit.
+     */
+    private List<Request> grant(String license) {
+        Queue queue = queues.get(license);
+        List<Request> granted = new ArrayList<>();
+        int max = capacity.applyAsInt(license);
+        while (!queue.waiting.isEmpty()) {
+            Request head = queue.waiting.peek();
+            // a pool that was removed no longer limits anything, and a shrunk pool still lets one build run
+            if (max >= 0 && queue.held > 0 && queue.held + head.seats > max) {
+                break;
+            }
+            queue.waiting.poll();
+            queue.held += head.seats;
+            granted.add(head);
+        }
+        if (queue.held == 0 && queue.waiting.isEmpty()) {
+            queues.remove(license);
+        }
+        return granted;
+    }
+
+    // outside of the lock, since completing runs the callbacks of the waiting steps
+    private void complete(List<Request> granted) {
+        long now = System.currentTimeMillis();
+        for (Request request : granted) {
+            Lease lease = new Lease(this, request.license, request.seats, now - request.since);
+            if (!request.future.complete(lease)) {
+                // cancelled in the meantime
+                release(lease);
+            }
+        }
+    }
+
+    /**
+     * A request for seats waiting in the queue of its license.
+     */
+    final class Request {
+        private final String license;
+        private final int seats;
+        private final String owner;
+        private final long since = System.currentTimeMillis();
+        final CompletableFuture<Lease> future = new CompletableFuture<>();
+
+        Request(String license, int seats, String owner) {
+            this.license = license;
+            this.seats = seats;
+            this.owner = owner;
+        }
+
+        /**
+         * Number of requests ahead of this one, or {@code 0} once it got its seats.
+         */
+        int position() {
+            synchronized (ProvarLicenseSeats.this) {
+                Queue queue = queues.get(license);
+                int position = 0;
+                if (queue != null) {
+                    for (Request request : queue.waiting) {
+                        if (request == this) {
+                            return position;
+                        }
+                        position++;
+                    }
+                }
+                return 0;
+            }
+        }
+
+        /**
+         * Tells the build it is waiting, unless it already got its seats.
+         */
+        void waiting(@NonNull Run<?, ?> build, @NonNull TaskListener listener) {
+            if (!future.isDone()) {
+                listener.getLogger().println(Messages.ProvarAutomation_WaitingForSeats(seats, license, position(),
+                        capacity.applyAsInt(license), held(license)));
+                ProvarLicenseAction.of(build).waiting(this);
+            }
+        }
+
+        /**
+         * Gives up waiting, or releases the seats if they were granted meanwhile.
+         */
+        void cancel() {
+            boolean removed;
+            synchronized (ProvarLicenseSeats.this) {
+                Queue queue = queues.get(license);
+                removed = queue != null && queue.waiting.remove(this);
+            }
+            if (removed) {
+                // the requests behind may fit now
+                List<Request> granted;
+                synchronized (ProvarLicenseSeats.this) {
+                    granted = queues.containsKey(license) ? grant(license) : List.of();
+                }
+                complete(granted);
+                future.cancel(false);
+            } else if (!future.cancel(false)) {
+                future.join().release();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return owner + " waiting for " + seats + " seats of " + license;
+        }
+    }
+
+    /**
+     * Seats held by a build until it releases them.
+     */
+    static final class Lease implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String license;
+        private final int seats;
+        private final long waited;
+        private boolean released;
+        // the controller-wide seats after a restart
+        private transient ProvarLicenseSeats pool;
+
+        Lease(@NonNull ProvarLicenseSeats pool, @NonNull String license, int seats, long waited) {
+            this.pool = pool;
+            this.license = license;
+            this.seats = seats;
+            this.waited = waited;
+        }
+
+        private ProvarLicenseSeats pool() {
+            return pool != null ? pool : get();
+        }
+
+        /**
+         * Shows the wait on the build page and in the log.
+         */
+        @NonNull
+        Lease record(@NonNull Run<?, ?> build, @NonNull TaskListener listener) {
+            ProvarLicenseAction.of(build).granted(license, seats, waited);
+            if (waited > 0) {
+                listener.getLogger().println(Messages.ProvarAutomation_GotSeats(seats, license, Util.getTimeSpanString(waited)));
+            }
+            return this;
+        }
+
+        /**
+         * Milliseconds the build waited for the seats.
+         */
+        long getWaited() { return waited; }
+
+        /**
+         * Gives the seats back, once.
+         */
+        synchronized void release() {
+            if (!released) {
+                released = true;
+                pool().release(this);
+            }
+        }
+
+        /**
+         * Takes the seats again after a restart, unless they were released.
+         */
+        synchronized void reclaim() {
+            if (!released) {
+                pool().reclaim(this);
+            }
+        }
+    }
+}
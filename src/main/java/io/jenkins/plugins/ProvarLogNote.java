@@ -0,0 +1,83 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import hudson.MarkupText;
+import hudson.Util;
+import hudson.console.ConsoleAnnotator;
+import hudson.console.ConsoleNote;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest;
+
+import java.io.IOException;
+
+/**
+ * Links the {@code [provar-log:name:chunk:offset]} marker of a line written by {@link ProvarDetailedLogger}
+ * to the place of the line in the {@link ProvarDetailedLogAction detailed log}. The marker carries the position,
+ * so the note itself has no state and is encoded once.
+ */
+public class ProvarLogNote extends ConsoleNote<Object> {
+
+    private static volatile byte[] encoded;
+
+    static byte[] encoded() throws IOException {
+        if (encoded == null) {
+            encoded = new ProvarLogNote().encodeToBytes().toByteArray();
+        }
+        return encoded;
+    }
+
+    @Override
+    public ConsoleAnnotator<?> annotate(Object context, MarkupText text, int charPos) {
+        if (!(context instanceof Run)) {
+            return null;
+        }
+        String line = text.getText();
+        int start = line.lastIndexOf(ProvarDetailedLogger.MARKER);
+        int end = start < charPos ? -1 : line.indexOf(']', start);
+        if (end < 0) {
+            return null;
+        }
+        String[] position = line.substring(start + ProvarDetailedLogger.MARKER.length(), end).split(":");
+        if (position.length != 3 || !position[1].matches("\\d+") || !position[2].matches("\\d+")) {
+            return null;
+        }
+        String url = "/" + ((Run<?, ?>) context).getUrl() + ProvarDetailedLogAction.FOLDER + "/view?log=" + Util.rawEncode(position[0])
+                + "&chunk=" + position[1] + "&offset=" + position[2];
+        StaplerRequest req = Stapler.getCurrentRequest();
+        if (req != null) {
+            url = req.getContextPath() + url;
+        } else {
+            String rootUrl = Jenkins.get().getRootUrl();
+            url = rootUrl != null ? rootUrl + url.substring(1) : url;
+        }
+        text.addMarkup(start, end + 1, "<a href=\"" + Util.escape(url) + "\">", "</a>");
+        return null;
+    }
+
+    private static final long serialVersionUID = 1L;
+}
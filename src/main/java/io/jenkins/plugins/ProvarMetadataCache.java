@@ -0,0 +1,267 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Snapshot of the {@code .provarCaches} Salesforce metadata cache of a project, kept outside the workspace
+ * so fresh agents do not have to download the metadata again. Snapshots are keyed by project and environment,
+ * and hold one folder per connection; a manifest of SHA-256 checksums is used to copy only the changed entries.
+ * Snapshots kept on the controller are removed once no build restored or saved them for {@link #MAX_AGE}.
+ */
+final class ProvarMetadataCache implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    static final String CACHE_FOLDER = ".provarCaches";
+    private static final String MANIFEST = "manifest.properties";
+    private static final String FILES = "files";
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+    static final String STORE = "provar-metadata-cache";
+    // snapshots not used for longer belong to projects or environments no build runs any more
+    static final long MAX_AGE = TimeUnit.DAYS.toMillis(SystemProperties.getLong(ProvarMetadataCache.class.getName() + ".maxAgeDays", 30L));
+
+    private final FilePath entry;
+
+    /**
+     * @param store the snapshot store, see {@link #store(String, FilePath)}
+     */
+    ProvarMetadataCache(@NonNull FilePath store, @NonNull String projectName, @NonNull String environment) {
+        String name = (environment.isEmpty() ? "default" : environment).replaceAll("[^A-Za-z0-9._-]", "_");
+        this.entry = store.child(name + "-" + Util.getDigestOf(projectName + "\n" + environment).substring(0, 8));
+    }
+
+    /**
+     * The store for snapshots: a shared path as seen from the agent, or a folder on the controller if no path is set.
+     */
+    @NonNull
+    static FilePath store(@CheckForNull String path, @NonNull FilePath workspace) {
+        if (path == null || path.isEmpty()) {
+            return new FilePath(new File(Jenkins.get().getRootDir(), STORE));
+        }
+        return new FilePath(workspace.getChannel(), path);
+    }
+
+    /**
+     * Copies the snapshot into the cache folder of the workspace, skipping entries whose checksum already matches.
+     *
+     * @return whether there was a snapshot to restore
+     */
+    boolean restore(@NonNull FilePath cacheDir, @NonNull TaskListener listener) throws IOException, InterruptedException {
+        synchronized (lock()) {
+            Properties manifest = readManifest();
+            if (manifest.isEmpty()) {
+                listener.getLogger().println("No Salesforce metadata cache snapshot found in " + entry);
+                return false;
+            }
+            // the manifest tells when the snapshot was last used
+            entry.child(MANIFEST).touch(System.currentTimeMillis());
+            Map<String, String> current = cacheDir.exists() ? cacheDir.act(new Checksums()) : new TreeMap<>();
+            List<String> changed = new ArrayList<>();
+            for (String path : manifest.stringPropertyNames()) {
+                if (!manifest.getProperty(path).equals(current.get(path))) {
+                    changed.add(path);
+                }
+            }
+            if (!changed.isEmpty()) {
+                cacheDir.mkdirs();
+                entry.child(FILES).copyRecursiveTo(new ProvarFileSelection(changed), cacheDir, "Salesforce metadata cache");
+            }
+            listener.getLogger().println("Restored " + changed.size() + " of " + manifest.size()
+                    + " Salesforce metadata cache entries from " + entry + " (" + (manifest.size() - changed.size()) + " unchanged)");
+            return true;
+        }
+    }
+
+    /**
+     * Copies the entries of the cache folder that differ from the snapshot into the store.
+     */
+    void snapshot(@NonNull FilePath cacheDir, @NonNull TaskListener listener) throws IOException, InterruptedException {
+        if (!cacheDir.exists()) {
+            return;
+        }
+        synchronized (lock()) {
+            Properties manifest = readManifest();
+            Map<String, String> current = cacheDir.act(new Checksums());
+            List<String> changed = new ArrayList<>();
+            for (Map.Entry<String, String> e : current.entrySet()) {
+                if (!e.getValue().equals(manifest.getProperty(e.getKey()))) {
+                    changed.add(e.getKey());
+                }
+            }
+            int removed = 0;
+            FilePath files = entry.child(FILES);
+            for (String path : manifest.stringPropertyNames()) {
+                if (!current.containsKey(path)) {
+                    files.child(path).delete();
+                    removed++;
+                }
+            }
+            if (!changed.isEmpty()) {
+                files.mkdirs();
+                cacheDir.copyRecursiveTo(new ProvarFileSelection(changed), files, "Salesforce metadata cache");
+            }
+            Properties updated = new Properties();
+            updated.putAll(current);
+            try (OutputStream out = entry.child(MANIFEST).write()) {
+                updated.store(out, "Provar Salesforce metadata cache");
+            }
+            listener.getLogger().println("Saved " + changed.size() + " changed Salesforce metadata cache entries to " + entry
+                    + " (" + (current.size() - changed.size()) + " unchanged, " + removed + " removed)");
+        }
+    }
+
+    private Object lock() {
+        return lock(entry.getRemote());
+    }
+
+    private static Object lock(String entry) {
+        return LOCKS.computeIfAbsent(entry, k -> new Object());
+    }
+
+    /**
+     * Removes the snapshots of the store last restored or saved before the given time.
+     *
+     * @return the number of snapshots removed
+     */
+    static int sweep(@NonNull File store, long before) throws IOException {
+        File[] entries = store.listFiles(File::isDirectory);
+        if (entries == null) {
+            return 0;
+        }
+        int removed = 0;
+        for (File dir : entries) {
+            synchronized (lock(dir.getPath())) {
+                File manifest = new File(dir, MANIFEST);
+                long used = manifest.isFile() ? manifest.lastModified() : dir.lastModified();
+                if (used < before) {
+                    Util.deleteRecursive(dir);
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Sweeps the store on the controller once a day. Snapshots in a shared path are left to whoever manages it.
+     */
+    @Extension
+    public static final class Cleanup extends AsyncPeriodicWork {
+
+        public Cleanup() {
+            super("Provar metadata cache cleanup");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return DAY;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) throws IOException {
+            int removed = sweep(new File(Jenkins.get().getRootDir(), STORE), System.currentTimeMillis() - MAX_AGE);
+            listener.getLogger().println("Removed " + removed + " Salesforce metadata cache snapshots unused for "
+                    + TimeUnit.MILLISECONDS.toDays(MAX_AGE) + " days");
+        }
+    }
+
+    private Properties readManifest() throws IOException, InterruptedException {
+        Properties manifest = new Properties();
+        FilePath file = entry.child(MANIFEST);
+        if (file.exists()) {
+            try (InputStream in = file.read()) {
+                manifest.load(in);
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * SHA-256 checksums of every file below the directory, keyed by the path relative to it.
+     */
+    static final class Checksums extends MasterToSlaveFileCallable<Map<String, String>> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Map<String, String> invoke(File dir, VirtualChannel channel) throws IOException {
+            Map<String, String> checksums = new TreeMap<>();
+            Path root = dir.toPath();
+            List<Path> files = new ArrayList<>();
+            try (Stream<Path> paths = Files.walk(root)) {
+                paths.filter(Files::isRegularFile).forEach(files::add);
+            }
+            byte[] buffer = new byte[64 * 1024];
+            for (Path file : files) {
+                checksums.put(root.relativize(file).toString().replace('\\', '/'), checksum(file, buffer));
+            }
+            return checksums;
+        }
+
+        static String checksum(Path file, byte[] buffer) throws IOException {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+            try (InputStream in = Files.newInputStream(file)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            return Util.toHexString(digest.digest());
+        }
+    }
+}
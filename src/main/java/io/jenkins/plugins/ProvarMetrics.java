@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Phase timings and counters of Provar build steps, see {@link ProvarMetricsAction}.
+ */
+@ExportedBean
+public final class ProvarMetrics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Phase {
+        ToolResolution, BuildFileResolution, Compile, MetadataCacheLoad, LicenseWait, TestExecution, ResultParsing
+    }
+
+    public enum Counter {
+        ToolCacheHits, ToolCacheMisses, CompileCacheHits, CompileCacheMisses, MetadataCacheHits, MetadataCacheMisses,
+        Tests, FailedTests, OutputBytes
+    }
+
+    // milliseconds by phase, keyed by name so renamed phases do not break older builds
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+
+    /**
+     * Adds the time since {@code start}, as returned by {@link System#currentTimeMillis()}, to the phase.
+     */
+    void time(@NonNull Phase phase, long start) {
+        add(phase, Math.max(System.currentTimeMillis() - start, 0));
+    }
+
+    synchronized void add(@NonNull Phase phase, long millis) {
+        phases.merge(phase.name(), millis, Long::sum);
+    }
+
+    synchronized void count(@NonNull Counter counter, long n) {
+        counters.merge(counter.name(), n, Long::sum);
+    }
+
+    synchronized void add(@NonNull ProvarMetrics other) {
+        Map<String, Long> otherPhases;
+        Map<String, Long> otherCounters;
+        synchronized (other) {
+            otherPhases = new LinkedHashMap<>(other.phases);
+            otherCounters = new LinkedHashMap<>(other.counters);
+        }
+        otherPhases.forEach((k, v) -> phases.merge(k, v, Long::sum));
+        otherCounters.forEach((k, v) -> counters.merge(k, v, Long::sum));
+    }
+
+    /**
+     * Milliseconds spent by phase.
+     */
+    @Exported
+    @NonNull
+    public synchronized Map<String, Long> getPhases() { return new LinkedHashMap<>(phases); }
+
+    @Exported
+    @NonNull
+    public synchronized Map<String, Long> getCounters() { return new LinkedHashMap<>(counters); }
+
+    public synchronized long getPhase(@NonNull Phase phase) { return phases.getOrDefault(phase.name(), 0L); }
+
+    public synchronized long getCounter(@NonNull Counter counter) { return counters.getOrDefault(counter.name(), 0L); }
+}
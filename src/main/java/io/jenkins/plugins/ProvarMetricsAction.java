@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Api;
+import hudson.model.RootAction;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+import jenkins.model.RunAction2;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Phase timings and counters of the Provar steps of a build, e.g. {@code job/x/1/provar-metrics/api/json}.
+ * Every step also adds its metrics to the {@link Aggregate} of all jobs.
+ */
+@ExportedBean
+public class ProvarMetricsAction implements RunAction2 {
+
+    private final ProvarMetrics metrics = new ProvarMetrics();
+    private int steps;
+    private transient Run<?, ?> run;
+
+    /**
+     * Returns the action of the run, creating it if needed.
+     */
+    @NonNull
+    static synchronized ProvarMetricsAction of(@NonNull Run<?, ?> run) {
+        ProvarMetricsAction action = run.getAction(ProvarMetricsAction.class);
+        if (action == null) {
+            action = new ProvarMetricsAction();
+            run.addAction(action);
+        }
+        return action;
+    }
+
+    /**
+     * Records the metrics of a finished step (or of one browser of it) in the build and in the aggregate.
+     */
+    static void record(@NonNull Run<?, ?> run, @NonNull ProvarMetrics step) {
+        of(run).add(step);
+        Aggregate.get().add(step);
+    }
+
+    synchronized void add(@NonNull ProvarMetrics step) {
+        metrics.add(step);
+        steps++;
+    }
+
+    @Exported
+    @NonNull
+    public ProvarMetrics getMetrics() { return metrics; }
+
+    /**
+     * Number of Provar invocations the metrics were recorded for.
+     */
+    @Exported
+    public synchronized int getSteps() { return steps; }
+
+    public Api getApi() { return new Api(this); }
+
+    public Run<?, ?> getRun() { return run; }
+
+    @Override
+    public void onAttached(Run<?, ?> r) { this.run = r; }
+
+    @Override
+    public void onLoad(Run<?, ?> r) { this.run = r; }
+
+    // only reachable through the API
+    @Override
+    public String getIconFileName() { return null; }
+
+    @Override
+    public String getDisplayName() { return "Provar Metrics"; }
+
+    @Override
+    public String getUrlName() { return "provar-metrics"; }
+
+    /**
+     * Metrics of the Provar steps of all jobs since the controller started, at {@code provar-metrics/api/json}.
+     */
+    @Extension
+    @ExportedBean
+    public static final class Aggregate implements RootAction {
+
+        private final ProvarMetrics metrics = new ProvarMetrics();
+        private int steps;
+
+        static Aggregate get() {
+            return ExtensionList.lookupSingleton(Aggregate.class);
+        }
+
+        synchronized void add(@NonNull ProvarMetrics step) {
+            metrics.add(step);
+            steps++;
+        }
+
+        @Exported
+        @NonNull
+        public ProvarMetrics getMetrics() { return metrics; }
+
+        @Exported
+        public synchronized int getSteps() { return steps; }
+
+        public Api getApi() {
+            Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            return new Api(this);
+        }
+
+        @Override
+        public String getIconFileName() { return null; }
+
+        @Override
+        public String getDisplayName() { return "Provar Metrics"; }
+
+        @Override
+        public String getUrlName() { return "provar-metrics"; }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
+import hudson.Functions;
+import hudson.Util;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Everything the build step needs to know from the agent before launching Provar, collected in a single
+ * remoting round trip: the build file, the license path, the Provar executable and a few facts about the agent.
+ */
+final class ProvarPreflight extends MasterToSlaveCallable<ProvarPreflight.Result, IOException> {
+    private static final long serialVersionUID = 1L;
+
+    private final String moduleRoot;
+    private final String workspace;
+    private final String projectName;
+    private final String buildFile;
+    private final String licensePath;
+    @CheckForNull
+    private final String provarHome;
+
+    /**
+     * @param provarHome the installation to check for {@code ant/ant-provar.jar}, or {@code null} to skip the check
+     */
+    ProvarPreflight(@NonNull String moduleRoot, @NonNull String workspace, @NonNull String projectName, @NonNull String buildFile,
+                    @NonNull String licensePath, @CheckForNull String provarHome) {
+        this.moduleRoot = moduleRoot;
+        this.workspace = workspace;
+        this.projectName = projectName;
+        this.buildFile = buildFile;
+        this.licensePath = licensePath;
+        this.provarHome = provarHome;
+    }
+
+    @Override
+    public Result call() throws IOException {
+        Result result = new Result();
+
+        // the build file is looked up in the project of the module root first, then of the workspace root
+        File found = buildFile(new File(moduleRoot));
+        if (!found.isFile()) {
+            found = buildFile(new File(workspace));
+        }
+        result.buildFileFound = found.isFile();
+        result.buildFile = result.buildFileFound ? found.getPath() : new File(workspace, buildFile).getPath();
+
+        result.licensePathExists = new File(licensePath).isDirectory();
+
+        if (provarHome != null) {
+            String home = Util.replaceMacro(provarHome, EnvVars.masterEnvVars);
+            File exe = new File(home, "ant" + File.separator + "ant-provar.jar");
+            if (exe.exists()) {
+                result.executable = exe.getParentFile().getParent();
+            }
+        }
+
+        result.os = System.getProperty("os.name") + " " + System.getProperty("os.arch");
+        result.javaVersion = System.getProperty("java.version");
+        result.processors = Runtime.getRuntime().availableProcessors();
+        result.usableSpace = new File(workspace).getUsableSpace();
+        result.agentTime = System.currentTimeMillis();
+        return result;
+    }
+
+    private File buildFile(File base) {
+        return new File(new File(new File(base, projectName), "ANT"), buildFile);
+    }
+
+    static final class Result implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private String buildFile;
+        private boolean buildFileFound;
+        private boolean licensePathExists;
+        @CheckForNull
+        private String executable;
+        private String os;
+        private String javaVersion;
+        private int processors;
+        private long usableSpace;
+        private long agentTime;
+
+        /**
+         * Path of the build file on the agent. If it was not found, a path below the workspace root.
+         */
+        @NonNull
+        String getBuildFile() { return buildFile; }
+        boolean isBuildFileFound() { return buildFileFound; }
+        boolean isLicensePathExists() { return licensePathExists; }
+        /**
+         * The Provar home containing {@code ant/ant-provar.jar}, or {@code null} if it was not found or not checked.
+         */
+        @CheckForNull
+        String getExecutable() { return executable; }
+        /**
+         * The clock of the agent at the time of the call, to compare with file times on the agent.
+         */
+        long getAgentTime() { return agentTime; }
+
+        @Override
+        public String toString() {
+            return os + ", Java " + javaVersion + ", " + processors + " processors, "
+                    + Functions.humanReadableByteSize(usableSpace) + " free in the workspace";
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.matrix.MatrixAggregator;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixRun;
+import hudson.model.BuildListener;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Provar test outcomes of a build. Every Provar step of the build (and every shard of a matrix build)
+ * adds its results to the same action, so the build page shows one merged result.
+ */
+public class ProvarResultsAction implements RunAction2 {
+
+    private final List<ProvarTestResult> results = new ArrayList<>();
+    // outcomes of invocations that are still running, by group
+    private transient Map<String, Live> live;
+    private transient Run<?, ?> run;
+    // disk space reclaimed from older Results folders after the build, see ProvarResultsRetention
+    private long reclaimedBytes;
+
+    /**
+     * Returns the action of the run, creating it if needed.
+     */
+    @NonNull
+    static synchronized ProvarResultsAction of(@NonNull Run<?, ?> run) {
+        ProvarResultsAction action = run.getAction(ProvarResultsAction.class);
+        if (action == null) {
+            action = new ProvarResultsAction();
+            run.addAction(action);
+        }
+        return action;
+    }
+
+    synchronized void add(@CheckForNull String group, @NonNull List<ProvarTestResult> results) {
+        for (ProvarTestResult result : results) {
+            this.results.add(result.withGroup(group));
+        }
+        if (live != null) {
+            live.remove(Util.fixNull(group));
+        }
+    }
+
+    /**
+     * Publishes the outcomes of a running invocation, replacing what it published before.
+     *
+     * @param expected number of test cases the invocation is going to run, or {@code -1} if unknown
+     */
+    synchronized void setLive(@CheckForNull String group, @NonNull List<ProvarTestResult> results, int expected) {
+        if (live == null) {
+            live = new HashMap<>();
+        }
+        live.put(Util.fixNull(group), new Live(results, expected));
+    }
+
+    /**
+     * Whether Provar is still running for this build.
+     */
+    public synchronized boolean isRunning() {
+        return live != null && !live.isEmpty();
+    }
+
+    public int getLivePassedCount() { return liveCount(ProvarTestResult.Status.Passed); }
+    public int getLiveFailedCount() { return liveCount(ProvarTestResult.Status.Failed); }
+
+    /**
+     * Number of test cases still to run, or {@code -1} if unknown.
+     */
+    public synchronized int getLiveRemainingCount() {
+        int remaining = 0;
+        if (live != null) {
+            for (Live l : live.values()) {
+                if (l.expected < 0) {
+                    return -1;
+                }
+                remaining += Math.max(l.expected - l.results.size(), 0);
+            }
+        }
+        return remaining;
+    }
+
+    private synchronized int liveCount(ProvarTestResult.Status status) {
+        int count = 0;
+        if (live != null) {
+            for (Live l : live.values()) {
+                for (ProvarTestResult result : l.results) {
+                    if (result.getStatus() == status) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    @NonNull
+    public synchronized List<ProvarTestResult> getResults() {
+        return Collections.unmodifiableList(new ArrayList<>(results));
+    }
+
+    @NonNull
+    public synchronized List<ProvarTestResult> getResults(@CheckForNull String group) {
+        List<ProvarTestResult> grouped = new ArrayList<>();
+        for (ProvarTestResult result : results) {
+            if (group == null ? result.getGroup() == null : group.equals(result.getGroup())) {
+                grouped.add(result);
+            }
+        }
+        return grouped;
+    }
+
+    @NonNull
+    public synchronized Set<String> getGroups() {
+        Set<String> groups = new TreeSet<>();
+        for (ProvarTestResult result : results) {
+            if (result.getGroup() != null) {
+                groups.add(result.getGroup());
+            }
+        }
+        return groups;
+    }
+
+    synchronized void addReclaimedBytes(long bytes) {
+        reclaimedBytes += bytes;
+    }
+
+    public synchronized long getReclaimedBytes() { return reclaimedBytes; }
+
+    public synchronized int getTotalCount() { return results.size(); }
+    public int getPassedCount() { return count(ProvarTestResult.Status.Passed); }
+    public int getFailedCount() { return count(ProvarTestResult.Status.Failed); }
+    public int getSkippedCount() { return count(ProvarTestResult.Status.Skipped); }
+
+    /**
+     * Number of test cases that failed at first but passed when they were rerun.
+     */
+    public synchronized int getFlakyCount() {
+        int count = 0;
+        for (ProvarTestResult result : results) {
+            if (result.isFlaky()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Number of test cases that were rerun and failed every time.
+     */
+    public synchronized int getConsistentlyFailedCount() {
+        int count = 0;
+        for (ProvarTestResult result : results) {
+            if (result.getStatus() == ProvarTestResult.Status.Failed && result.getAttempts() > 1) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private synchronized int count(ProvarTestResult.Status status) {
+        int count = 0;
+        for (ProvarTestResult result : results) {
+            if (result.getStatus() == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public Run<?, ?> getRun() { return run; }
+
+    @Override
+    public void onAttached(Run<?, ?> r) { this.run = r; }
+
+    @Override
+    public void onLoad(Run<?, ?> r) { this.run = r; }
+
+    @Override
+    public String getIconFileName() { return "clipboard.png"; }
+
+    private static final class Live {
+        private final List<ProvarTestResult> results;
+        private final int expected;
+
+        Live(List<ProvarTestResult> results, int expected) {
+            this.results = results;
+            this.expected = expected;
+        }
+    }
+
+    @Override
+    public String getDisplayName() { return "Provar Test Results"; }
+
+    @Override
+    public String getUrlName() { return "provar-results"; }
+
+    /**
+     * Merges the results and test timings of every matrix configuration (e.g. one per shard) into the parent build.
+     */
+    static final class Aggregator extends MatrixAggregator {
+
+        Aggregator(MatrixBuild build, Launcher launcher, BuildListener listener) {
+            super(build, launcher, listener);
+        }
+
+        @Override
+        public boolean endRun(MatrixRun run) {
+            ProvarResultsAction child = run.getAction(ProvarResultsAction.class);
+            if (child != null) {
+                ProvarResultsAction merged = of(build);
+                String combination = run.getParent().getCombination().toString();
+                for (ProvarTestResult result : child.getResults()) {
+                    merged.add(result.getGroup() != null ? result.getGroup() : combination, Collections.singletonList(result));
+                }
+            }
+            ProvarTestTimings timings = run.getAction(ProvarTestTimings.class);
+            if (timings != null) {
+                // only what the configuration recorded, the rest of its timings is the history every configuration starts from
+                ProvarTestTimings.of(build).merge(timings.getRecorded());
+            }
+            return true;
+        }
+
+        @Override
+        public boolean endBuild() {
+            ProvarResultsAction merged = build.getAction(ProvarResultsAction.class);
+            if (merged != null) {
+                listener.getLogger().println("Provar results: " + merged.getTotalCount() + " tests, " + merged.getPassedCount() + " passed, "
+                        + merged.getFailedCount() + " failed, " + merged.getSkippedCount() + " skipped, " + merged.getFlakyCount() + " flaky");
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.DirectoryBrowserSupport;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+import jenkins.util.VirtualFile;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.servlet.ServletException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * The Results folders published for a build by {@link ProvarResultsStore}, browsable like the artifacts of the build.
+ * The build directory holds one manifest per invocation, the files themselves are in the store of the job.
+ */
+public class ProvarResultsFolderAction implements RunAction2 {
+
+    static final String FOLDER = "provar-results";
+
+    private transient Run<?, ?> run;
+
+    /**
+     * Returns the action of the run, creating it if needed.
+     */
+    @NonNull
+    static synchronized ProvarResultsFolderAction of(@NonNull Run<?, ?> run) {
+        ProvarResultsFolderAction action = run.getAction(ProvarResultsFolderAction.class);
+        if (action == null) {
+            action = new ProvarResultsFolderAction();
+            run.addAction(action);
+        }
+        return action;
+    }
+
+    /**
+     * Folder of the manifest of one invocation in the build directory.
+     */
+    @NonNull
+    static File dir(@NonNull Run<?, ?> run, @NonNull String folder) {
+        return new File(new File(run.getRootDir(), FOLDER), folder);
+    }
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+        doDynamic(req, rsp);
+    }
+
+    public void doDynamic(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+        new DirectoryBrowserSupport(this, root(), getDisplayName(), "folder.png", true).generateResponse(req, rsp, this);
+    }
+
+    /**
+     * The files of every invocation, below the folder of the invocation.
+     */
+    @NonNull
+    VirtualFile root() throws IOException {
+        Map<String, String> files = new TreeMap<>();
+        long lastModified = 0;
+        File[] folders = new File(run.getRootDir(), FOLDER).listFiles(File::isDirectory);
+        for (File folder : folders != null ? folders : new File[0]) {
+            File manifest = new File(folder, ProvarResultsStore.MANIFEST);
+            if (!manifest.isFile()) {
+                continue;
+            }
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(manifest.toPath())) {
+                properties.load(in);
+            }
+            for (String path : properties.stringPropertyNames()) {
+                files.put(folder.getName() + "/" + path, properties.getProperty(path));
+            }
+            lastModified = Math.max(lastModified, manifest.lastModified());
+        }
+        return new Entry(new Tree(ProvarResultsStore.of(run.getParent()), files, lastModified), "");
+    }
+
+    public Run<?, ?> getRun() { return run; }
+
+    @Override
+    public void onAttached(Run<?, ?> r) { this.run = r; }
+
+    @Override
+    public void onLoad(Run<?, ?> r) { this.run = r; }
+
+    @Override
+    public String getIconFileName() { return "folder.png"; }
+
+    @Override
+    public String getDisplayName() { return "Provar Results Folder"; }
+
+    @Override
+    public String getUrlName() { return FOLDER; }
+
+    private static final class Tree {
+        private final ProvarResultsStore store;
+        // path -> checksum of the stored file
+        private final TreeMap<String, String> files;
+        private final long lastModified;
+
+        Tree(ProvarResultsStore store, Map<String, String> files, long lastModified) {
+            this.store = store;
+            this.files = new TreeMap<>(files);
+            this.lastModified = lastModified;
+        }
+
+        boolean isDirectory(String path) {
+            if (path.isEmpty()) {
+                return true;
+            }
+            String prefix = path + "/";
+            String next = files.ceilingKey(prefix);
+            return next != null && next.startsWith(prefix);
+        }
+    }
+
+    /**
+     * A file or folder of the manifests, {@code path} being empty for the root.
+     */
+    private static final class Entry extends VirtualFile {
+        private final Tree tree;
+        private final String path;
+
+        Entry(Tree tree, String path) {
+            this.tree = tree;
+            this.path = path;
+        }
+
+        @NonNull
+        @Override
+        public String getName() {
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        @NonNull
+        @Override
+        public URI toURI() {
+            String checksum = tree.files.get(path);
+            return checksum != null ? tree.store.blob(checksum).toURI() : URI.create("provar-results:/" + path.replace(" ", "%20"));
+        }
+
+        @Override
+        public VirtualFile getParent() {
+            return path.isEmpty() ? null : new Entry(tree, path.contains("/") ? path.substring(0, path.lastIndexOf('/')) : "");
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return tree.isDirectory(path);
+        }
+
+        @Override
+        public boolean isFile() {
+            return tree.files.containsKey(path);
+        }
+
+        @Override
+        public boolean exists() {
+            return isFile() || isDirectory();
+        }
+
+        @NonNull
+        @Override
+        public VirtualFile[] list() {
+            String prefix = path.isEmpty() ? "" : path + "/";
+            List<VirtualFile> children = new ArrayList<>();
+            String last = null;
+            for (String file : tree.files.tailMap(prefix).keySet()) {
+                if (!file.startsWith(prefix)) {
+                    break;
+                }
+                int slash = file.indexOf('/', prefix.length());
+                String child = slash < 0 ? file : file.substring(0, slash);
+                if (!child.equals(last)) {
+                    children.add(new Entry(tree, child));
+                    last = child;
+                }
+            }
+            return children.toArray(new VirtualFile[0]);
+        }
+
+        @NonNull
+        @Override
+        public VirtualFile child(@NonNull String name) {
+            return new Entry(tree, path.isEmpty() ? name : path + "/" + name);
+        }
+
+        @Override
+        public long length() {
+            String checksum = tree.files.get(path);
+            return checksum != null ? tree.store.blob(checksum).length() : 0;
+        }
+
+        @Override
+        public long lastModified() {
+            return tree.lastModified;
+        }
+
+        @Override
+        public boolean canRead() {
+            return exists();
+        }
+
+        @Override
+        public boolean isDescendant(String childRelativePath) {
+            // the manifests have no links
+            return true;
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            String checksum = tree.files.get(path);
+            if (checksum == null) {
+                throw new FileNotFoundException(path);
+            }
+            return Files.newInputStream(tree.store.blob(checksum).toPath());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the JUnit output Provar writes into its {@code ANT/Results} folders.
+ */
+public final class ProvarResultsParser {
+
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newFactory();
+    static {
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private ProvarResultsParser() {}
+
+    /**
+     * Parses every {@code testcase} element of a JUnit report. Documents are read as a stream,
+     * so large reports are never held in memory.
+     */
+    @NonNull
+    public static List<ProvarTestResult> parse(@NonNull InputStream in) throws IOException {
+        List<ProvarTestResult> results = new ArrayList<>();
+        XMLStreamReader reader = null;
+        try {
+            reader = FACTORY.createXMLStreamReader(in);
+            String name = null;
+            String folder = null;
+            long duration = 0;
+            ProvarTestResult.Status status = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String element = reader.getLocalName();
+                    if ("testcase".equals(element)) {
+                        name = reader.getAttributeValue(null, "name");
+                        // Provar puts the folder of the test case below tests into the class name
+                        folder = reader.getAttributeValue(null, "classname");
+                        duration = parseDuration(reader.getAttributeValue(null, "time"));
+                        status = ProvarTestResult.Status.Passed;
+                    } else if (name != null && ("failure".equals(element) || "error".equals(element))) {
+                        status = ProvarTestResult.Status.Failed;
+                    } else if (name != null && "skipped".equals(element) && status != ProvarTestResult.Status.Failed) {
+                        status = ProvarTestResult.Status.Skipped;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && "testcase".equals(reader.getLocalName()) && name != null) {
+                    String path = folder == null || folder.isEmpty() || name.contains("/") ? name : folder + "/" + name;
+                    results.add(new ProvarTestResult(ProvarTestResult.testCaseName(name), ProvarTestResult.testCasePath(path), status, duration));
+                    name = null;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to parse Provar results", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // nothing left to read
+                }
+            }
+        }
+        return results;
+    }
+
+    private static long parseDuration(@CheckForNull String seconds) {
+        if (seconds == null || seconds.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.round(Double.parseDouble(seconds.replace(",", "")) * 1000);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Whether the directory is one of the folders created for {@link ProvarAutomation.ResultsPathSettings},
+     * i.e. {@code Results} or {@code Results(N)}.
+     */
+    static boolean isResultsFolder(@NonNull String name) {
+        return name.equals("Results") || (name.startsWith("Results(") && name.endsWith(")"));
+    }
+
+    /**
+     * Finds the most recently written Results folder in the given {@code ANT} directory.
+     */
+    @CheckForNull
+    static File latestResultsFolder(@NonNull File antDir) {
+        File[] folders = antDir.listFiles(f -> f.isDirectory() && isResultsFolder(f.getName()));
+        if (folders == null) {
+            return null;
+        }
+        File latest = null;
+        for (File folder : folders) {
+            if (latest == null || folder.lastModified() > latest.lastModified()) {
+                latest = folder;
+            }
+        }
+        return latest;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.Functions;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.Run;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Retention policy for the {@code Results} folders Provar leaves in the {@code ANT} folder of the project,
+ * which pile up with {@link ProvarAutomation.ResultsPathSettings#Increment}.
+ *
+ * <p>Folders beyond the last {@code keep} ones are compressed into {@code Results(N).zip} or deleted,
+ * then the oldest folders and archives are deleted until the total size is below the limit.
+ * The newest folder is never touched. Folders are ordered by modification time rather than by number,
+ * since the numbers are reused once older folders are gone.
+ */
+final class ProvarResultsRetention extends MasterToSlaveFileCallable<ProvarResultsRetention.Outcome> {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = Logger.getLogger(ProvarResultsRetention.class.getName());
+    private static final String ARCHIVE_EXTENSION = ".zip";
+
+    private final int keep;
+    private final long maxBytes;
+    private final boolean compress;
+
+    /**
+     * @param keep number of uncompressed folders to keep, {@code 0} to keep all
+     * @param maxBytes limit of the total size of folders and archives, {@code 0} for no limit
+     * @param compress whether folders beyond {@code keep} are compressed rather than deleted
+     */
+    ProvarResultsRetention(int keep, long maxBytes, boolean compress) {
+        this.keep = keep;
+        this.maxBytes = maxBytes;
+        this.compress = compress;
+    }
+
+    boolean isEnabled() {
+        return keep > 0 || maxBytes > 0;
+    }
+
+    /**
+     * Applies the policy to the {@code ANT} folder in the background, once Provar has finished,
+     * and adds the reclaimed bytes to the results of the build. Compressing and deleting over remoting can take a while,
+     * so it runs on the remoting pool rather than the shared timer.
+     */
+    void applyLater(@NonNull Run<?, ?> run, @NonNull FilePath antDir, @NonNull ProvarResultsAction action) {
+        Computer.threadPoolForRemoting.submit(() -> {
+            try {
+                Outcome outcome = antDir.act(this);
+                LOGGER.log(Level.FINE, "{0}: {1}", new Object[] {run, outcome});
+                if (outcome.getReclaimedBytes() > 0) {
+                    action.addReclaimedBytes(outcome.getReclaimedBytes());
+                    run.save();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to clean up the Results folders of " + run, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    @Override
+    public Outcome invoke(File antDir, VirtualChannel channel) throws IOException, InterruptedException {
+        Outcome outcome = new Outcome();
+        File[] entries = antDir.listFiles(ProvarResultsRetention::isResults);
+        if (entries == null || entries.length < 2) {
+            return outcome;
+        }
+        // newest first
+        List<File> results = new ArrayList<>(Arrays.asList(entries));
+        results.sort(Comparator.comparingLong(File::lastModified).reversed());
+
+        if (keep > 0) {
+            int folders = 0;
+            for (int i = 0; i < results.size(); i++) {
+                File entry = results.get(i);
+                if (!entry.isDirectory() || ++folders <= keep) {
+                    continue;
+                }
+                long size = size(entry);
+                if (compress) {
+                    File archive = compress(entry);
+                    results.set(i, archive);
+                    outcome.reclaimedBytes += Math.max(size - archive.length(), 0);
+                    outcome.compressed++;
+                } else {
+                    Util.deleteRecursive(entry);
+                    results.remove(i--);
+                    outcome.reclaimedBytes += size;
+                    outcome.deleted++;
+                }
+            }
+        }
+
+        if (maxBytes > 0) {
+            long total = 0;
+            long[] sizes = new long[results.size()];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = size(results.get(i));
+                total += sizes[i];
+            }
+            for (int i = sizes.length - 1; i > 0 && total > maxBytes; i--) {
+                Util.deleteRecursive(results.get(i));
+                total -= sizes[i];
+                outcome.reclaimedBytes += sizes[i];
+                outcome.deleted++;
+            }
+        }
+        return outcome;
+    }
+
+    private static File compress(File folder) throws IOException, InterruptedException {
+        File archive = new File(folder.getParentFile(), folder.getName() + ARCHIVE_EXTENSION);
+        File part = new File(folder.getParentFile(), archive.getName() + ".part");
+        new FilePath(folder).zip(new FilePath(part));
+        Files.move(part.toPath(), archive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        // keep the position of the folder in the retention order
+        if (!archive.setLastModified(folder.lastModified())) {
+            LOGGER.log(Level.FINE, "Unable to set the modification time of {0}", archive);
+        }
+        Util.deleteRecursive(folder);
+        return archive;
+    }
+
+    private static boolean isResults(File file) {
+        String name = file.getName();
+        if (file.isDirectory()) {
+            return ProvarResultsParser.isResultsFolder(name);
+        }
+        return name.endsWith(ARCHIVE_EXTENSION)
+                && ProvarResultsParser.isResultsFolder(name.substring(0, name.length() - ARCHIVE_EXTENSION.length()));
+    }
+
+    private static long size(File file) throws IOException {
+        if (!file.isDirectory()) {
+            return file.length();
+        }
+        try (Stream<Path> files = Files.walk(file.toPath())) {
+            return files.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+
+    static final class Outcome implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private int compressed;
+        private int deleted;
+        private long reclaimedBytes;
+
+        public int getCompressed() { return compressed; }
+        public int getDeleted() { return deleted; }
+        public long getReclaimedBytes() { return reclaimedBytes; }
+
+        @Override
+        public String toString() {
+            return "compressed " + compressed + " and deleted " + deleted + " Results folders, reclaiming "
+                    + Functions.humanReadableByteSize(reclaimedBytes);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Functions;
+import hudson.Util;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.util.Timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the Results folders of the builds of a job, with every file stored once by its SHA-256 checksum:
+ * screenshots and attachments that did not change since an earlier build are neither transferred nor stored again.
+ * Each build only gets a manifest of its files, see {@link ProvarResultsFolderAction}.
+ *
+ * <p>The agent computes the checksums, and the files missing from the store are streamed as one compressed
+ * archive. Files no build refers to any more are removed once builds are deleted.
+ */
+final class ProvarResultsStore {
+
+    private static final Logger LOGGER = Logger.getLogger(ProvarResultsStore.class.getName());
+    static final String STORE = "provar-results-store";
+    static final String MANIFEST = "manifest.properties";
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+    private static final Set<String> SWEEPS = ConcurrentHashMap.newKeySet();
+    private static final Pattern CHECKSUM = Pattern.compile("[0-9a-f]{64}");
+
+    private final File dir;
+
+    ProvarResultsStore(@NonNull File jobDir) {
+        this.dir = new File(jobDir, STORE);
+    }
+
+    @NonNull
+    static ProvarResultsStore of(@NonNull Job<?, ?> job) {
+        return new ProvarResultsStore(job.getRootDir());
+    }
+
+    /**
+     * Where the file with the given checksum is stored.
+     */
+    @NonNull
+    File blob(@NonNull String checksum) {
+        return new File(new File(dir, checksum.substring(0, 2)), checksum);
+    }
+
+    private Object lock() {
+        return LOCKS.computeIfAbsent(dir.getPath(), k -> new Object());
+    }
+
+    /**
+     * Stores the Results folders written since the given agent time for the build.
+     *
+     * @param antDir the {@code ANT} folder of the invocation
+     * @param folder the folder of the invocation in the build, see {@link ProvarInvocation#folderName()}
+     */
+    static void publish(@NonNull Run<?, ?> build, @NonNull FilePath antDir, long since, @NonNull String folder,
+                        @NonNull TaskListener listener) throws IOException, InterruptedException {
+        Map<String, String> checksums = antDir.act(new Checksums(since));
+        // the agent is not trusted with paths of the controller
+        checksums.entrySet().removeIf(e -> !CHECKSUM.matcher(e.getValue()).matches() || !isRelative(e.getKey()));
+        if (checksums.isEmpty()) {
+            listener.getLogger().println("No Results folder to publish in " + antDir);
+            return;
+        }
+        ProvarResultsStore store = of(build.getParent());
+        File manifest = new File(ProvarResultsFolderAction.dir(build, folder), MANIFEST);
+        // one path per missing checksum, identical files are only transferred once
+        Map<String, String> missing = new TreeMap<>();
+        synchronized (store.lock()) {
+            for (Map.Entry<String, String> e : checksums.entrySet()) {
+                if (!store.blob(e.getValue()).isFile()) {
+                    missing.putIfAbsent(e.getValue(), e.getKey());
+                }
+            }
+            // written first, so a sweep keeps the stored files the build refers to
+            writeManifest(manifest, checksums);
+        }
+        long transferred = 0;
+        // the checksums not stored yet, dropped from the manifest if they cannot be stored
+        Set<String> unavailable = new HashSet<>(missing.keySet());
+        try {
+            transferred = store.transfer(antDir, missing, unavailable, listener);
+        } finally {
+            if (!unavailable.isEmpty()) {
+                synchronized (store.lock()) {
+                    // another build may have stored some of them meanwhile
+                    unavailable.removeIf(checksum -> store.blob(checksum).isFile());
+                    for (Iterator<Map.Entry<String, String>> it = checksums.entrySet().iterator(); it.hasNext(); ) {
+                        Map.Entry<String, String> e = it.next();
+                        if (unavailable.contains(e.getValue())) {
+                            listener.getLogger().println("Results file not stored, leaving it out of the build: " + e.getKey());
+                            it.remove();
+                        }
+                    }
+                    writeManifest(manifest, checksums);
+                }
+            }
+        }
+        int stored = missing.size() - unavailable.size();
+        ProvarResultsFolderAction.of(build);
+        listener.getLogger().println("Published " + checksums.size() + " Results files: " + stored + " transferred ("
+                + Functions.humanReadableByteSize(transferred) + "), " + (checksums.size() - stored)
+                + " already stored for this or earlier builds");
+    }
+
+    /**
+     * Moves the missing files into the store, removing the checksum of each stored file from {@code unavailable}.
+     *
+     * @param missing a path of the {@code ANT} folder by missing checksum
+     * @return the number of bytes transferred
+     */
+    private long transfer(FilePath antDir, Map<String, String> missing, Set<String> unavailable, TaskListener listener)
+            throws IOException, InterruptedException {
+        long transferred = 0;
+        if (!missing.isEmpty()) {
+            Files.createDirectories(dir.toPath());
+            Path staging = Files.createTempDirectory(dir.toPath(), "staging");
+            try {
+                antDir.copyRecursiveTo(new ProvarFileSelection(missing.values()), new FilePath(staging.toFile()), "Provar Results",
+                        FilePath.TarCompression.GZIP);
+                byte[] buffer = new byte[64 * 1024];
+                for (Map.Entry<String, String> e : missing.entrySet()) {
+                    Path file = staging.resolve(e.getValue());
+                    if (!e.getKey().equals(ProvarMetadataCache.Checksums.checksum(file, buffer))) {
+                        listener.getLogger().println("Results file changed while it was published, skipping it: " + e.getValue());
+                        continue;
+                    }
+                    transferred += Files.size(file);
+                    Path blob = blob(e.getKey()).toPath();
+                    Files.createDirectories(blob.getParent());
+                    Files.move(file, blob, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    unavailable.remove(e.getKey());
+                }
+            } finally {
+                Util.deleteRecursive(staging.toFile());
+            }
+        }
+        return transferred;
+    }
+
+    private static void writeManifest(File manifest, Map<String, String> checksums) throws IOException {
+        Files.createDirectories(manifest.getParentFile().toPath());
+        Properties properties = new Properties();
+        properties.putAll(checksums);
+        try (OutputStream out = Files.newOutputStream(manifest.toPath())) {
+            properties.store(out, "Provar Results");
+        }
+    }
+
+    private static boolean isRelative(String path) {
+        if (path.isEmpty() || path.startsWith("/") || path.contains("\\") || path.indexOf(':') == 1) {
+            return false;
+        }
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || segment.equals(".") || segment.equals("..")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the stored files no build of the job refers to.
+     *
+     * @return the number of files removed
+     */
+    int sweep(@NonNull File buildsDir) throws IOException {
+        synchronized (lock()) {
+            if (!dir.isDirectory()) {
+                return 0;
+            }
+            Set<String> referenced = new HashSet<>();
+            File[] builds = buildsDir.listFiles(File::isDirectory);
+            for (File build : builds != null ? builds : new File[0]) {
+                File[] folders = new File(build, ProvarResultsFolderAction.FOLDER).listFiles(File::isDirectory);
+                for (File folder : folders != null ? folders : new File[0]) {
+                    File manifest = new File(folder, MANIFEST);
+                    if (manifest.isFile()) {
+                        Properties properties = new Properties();
+                        try (InputStream in = Files.newInputStream(manifest.toPath())) {
+                            properties.load(in);
+                        }
+                        for (String path : properties.stringPropertyNames()) {
+                            referenced.add(properties.getProperty(path));
+                        }
+                    }
+                }
+            }
+            int removed = 0;
+            File[] prefixes = dir.listFiles(f -> f.isDirectory() && f.getName().length() == 2);
+            for (File prefix : prefixes != null ? prefixes : new File[0]) {
+                File[] blobs = prefix.listFiles();
+                for (File blob : blobs != null ? blobs : new File[0]) {
+                    if (!referenced.contains(blob.getName())) {
+                        Files.deleteIfExists(blob.toPath());
+                        removed++;
+                    }
+                }
+            }
+            return removed;
+        }
+    }
+
+    /**
+     * Sweeps the store of a job once builds were deleted, e.g. by the build discarder.
+     */
+    @Extension
+    public static final class Cleanup extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            Job<?, ?> job = run.getParent();
+            ProvarResultsStore store = of(job);
+            if (!store.dir.isDirectory() || !SWEEPS.add(store.dir.getPath())) {
+                return;
+            }
+            // the build directory is only removed after the listeners ran, and the build discarder deletes several builds at once
+            Timer.get().schedule(() -> {
+                SWEEPS.remove(store.dir.getPath());
+                try {
+                    int removed = store.sweep(job.getBuildDir());
+                    LOGGER.fine(() -> "Removed " + removed + " Provar Results files of " + job.getFullName());
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Unable to clean up the Provar Results of " + job.getFullName(), e);
+                }
+            }, 1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * SHA-256 checksums of the files of the Results folders modified since the given agent time,
+     * keyed by their path relative to the {@code ANT} folder.
+     */
+    static final class Checksums extends MasterToSlaveFileCallable<Map<String, String>> {
+        private static final long serialVersionUID = 1L;
+        private final long since;
+
+        Checksums(long since) {
+            this.since = since;
+        }
+
+        @Override
+        public Map<String, String> invoke(File antDir, VirtualChannel channel) throws IOException {
+            Map<String, String> checksums = new TreeMap<>();
+            File[] folders = antDir.listFiles(f -> f.isDirectory() && ProvarResultsParser.isResultsFolder(f.getName())
+                    && f.lastModified() >= since);
+            if (folders == null) {
+                return checksums;
+            }
+            Path root = antDir.toPath();
+            byte[] buffer = new byte[64 * 1024];
+            for (File folder : folders) {
+                List<Path> files = new ArrayList<>();
+                try (Stream<Path> paths = Files.walk(folder.toPath())) {
+                    paths.filter(Files::isRegularFile).forEach(files::add);
+                }
+                for (Path file : files) {
+                    checksums.put(root.relativize(file).toString().replace('\\', '/'),
+                            ProvarMetadataCache.Checksums.checksum(file, buffer));
+                }
+            }
+            return checksums;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Follows the Results folder of a running Provar invocation. Each poll is a single call to the agent,
+ * which parses only the JUnit reports that changed since the previous poll and sends back their outcomes,
+ * so the build page can show a live summary long before Provar exits.
+ */
+final class ProvarResultsWatcher implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = Logger.getLogger(ProvarResultsWatcher.class.getName());
+
+    private final FilePath antDir;
+    private final long since;
+    @CheckForNull
+    private final String group;
+    private final int expected;
+    // looked up again after a restart, see attach
+    private transient ProvarResultsAction action;
+    // report file -> stamp of the version parsed last
+    private final Map<String, Long> stamps = new HashMap<>();
+    // report file -> outcomes
+    private final Map<String, List<ProvarTestResult>> reports = new TreeMap<>();
+
+    /**
+     * @param antDir the {@code ANT} folder of the project
+     * @param since agent time the invocation started at; older Results folders belong to earlier runs
+     * @param expected number of test cases that are going to run, or {@code -1} if unknown
+     */
+    ProvarResultsWatcher(@NonNull FilePath antDir, long since, @CheckForNull String group, int expected, @NonNull ProvarResultsAction action) {
+        this.antDir = antDir;
+        this.since = since;
+        this.group = group;
+        this.expected = expected;
+        this.action = action;
+    }
+
+    @NonNull
+    FilePath getAntDir() { return antDir; }
+
+    /**
+     * Agent time the run started at.
+     */
+    long getSince() { return since; }
+
+    /**
+     * Publishes the outcomes to the given action, e.g. after the watcher was deserialized.
+     */
+    @NonNull
+    synchronized ProvarResultsWatcher attach(@NonNull ProvarResultsAction action) {
+        this.action = action;
+        return this;
+    }
+
+    /**
+     * A watcher for the next run of the invocation, ignoring the Results folders written so far.
+     *
+     * @param expected number of test cases the next run is going to run
+     */
+    @NonNull
+    synchronized ProvarResultsWatcher restart(int expected) throws IOException, InterruptedException {
+        return new ProvarResultsWatcher(antDir, antDir.act(new Now()), group, expected, action);
+    }
+
+    /**
+     * Reads the reports that changed since the last poll and publishes the outcomes so far.
+     */
+    synchronized void poll() throws IOException, InterruptedException {
+        Update update = antDir.act(new Poll(since, new HashMap<>(stamps)));
+        stamps.putAll(update.stamps);
+        reports.putAll(update.reports);
+        if (action != null) {
+            action.setLive(group, results(), expected);
+        }
+    }
+
+    /**
+     * Polls from a timer thread, where failures are only logged.
+     */
+    void pollQuietly() {
+        try {
+            poll();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Unable to poll Provar results in " + antDir, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @NonNull
+    synchronized List<ProvarTestResult> results() {
+        List<ProvarTestResult> results = new ArrayList<>();
+        for (List<ProvarTestResult> report : reports.values()) {
+            results.addAll(report);
+        }
+        return results;
+    }
+
+    /**
+     * The clock of the agent, which the modification times of the Results folders are compared with.
+     */
+    static final class Now extends MasterToSlaveFileCallable<Long> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Long invoke(File f, VirtualChannel channel) {
+            return System.currentTimeMillis();
+        }
+    }
+
+    static final class Update implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final Map<String, Long> stamps = new HashMap<>();
+        private final Map<String, List<ProvarTestResult>> reports = new HashMap<>();
+    }
+
+    /**
+     * Parses the JUnit reports of the latest Results folder that changed since the given stamps.
+     * Reports that are still being written fail to parse and are picked up again by the next poll.
+     */
+    static final class Poll extends MasterToSlaveFileCallable<Update> {
+        private static final long serialVersionUID = 1L;
+        private final long since;
+        private final Map<String, Long> stamps;
+
+        Poll(long since, Map<String, Long> stamps) {
+            this.since = since;
+            this.stamps = stamps;
+        }
+
+        @Override
+        public Update invoke(File antDir, VirtualChannel channel) {
+            Update update = new Update();
+            File folder = ProvarResultsParser.latestResultsFolder(antDir);
+            if (folder == null || folder.lastModified() < since) {
+                return update;
+            }
+            File[] files = folder.listFiles(f -> f.isFile() && f.getName().endsWith(".xml"));
+            if (files == null) {
+                return update;
+            }
+            for (File file : files) {
+                long stamp = file.lastModified() * 31 + file.length();
+                if (Long.valueOf(stamp).equals(stamps.get(file.getPath()))) {
+                    continue;
+                }
+                try (InputStream in = Files.newInputStream(file.toPath())) {
+                    update.reports.put(file.getPath(), ProvarResultsParser.parse(in));
+                    update.stamps.put(file.getPath(), stamp);
+                } catch (IOException e) {
+                    // not a complete report (yet)
+                }
+            }
+            return update;
+        }
+    }
+}
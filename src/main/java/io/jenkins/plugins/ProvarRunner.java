@@ -0,0 +1,449 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.remoting.RemoteOutputStream;
+import hudson.remoting.VirtualChannel;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Runs a prepared Provar invocation on a warm {@link ProvarRunnerDaemon} of the agent instead of forking Ant,
+ * starting the daemon for the job and the Java, Ant and Provar installations of the invocation if none is running.
+ * Daemons are not shared between jobs, since the static state of the classes they loaded outlives a run.
+ * Returns {@code null} whenever the daemon cannot take the run, and the caller forks Ant as usual.
+ */
+final class ProvarRunner extends MasterToSlaveCallable<Integer, IOException> {
+
+    private static final long serialVersionUID = 1L;
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+    // the owner of the files of the runners, on the agent
+    private static volatile UserPrincipal currentUser;
+
+    /**
+     * Runs after which a daemon is replaced by a fresh one.
+     */
+    static final int MAX_RUNS = Integer.getInteger(ProvarRunner.class.getName() + ".maxRuns", 20);
+    /**
+     * Percentage of the maximum heap still in use after a run that gets a daemon replaced.
+     */
+    static final int MEMORY_THRESHOLD = Integer.getInteger(ProvarRunner.class.getName() + ".memoryThreshold", 75);
+    /**
+     * Minutes a daemon waits for the next run before exiting.
+     */
+    static final int IDLE_TIMEOUT = Integer.getInteger(ProvarRunner.class.getName() + ".idleTimeout", 30);
+    private static final long STARTUP_TIMEOUT = 60_000L;
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY = PosixFilePermissions.fromString("rwx------");
+    private static final Set<PosixFilePermission> OWNER_ONLY_FILE = PosixFilePermissions.fromString("rw-------");
+
+    private final String root;
+    private final String job;
+    private final byte[] jar;
+    private final String javaHome;
+    private final String antHome;
+    private final String provarHome;
+    private final String workingDirectory;
+    private final String buildFile;
+    private final Map<String, String> properties;
+    private final OutputStream out;
+
+    private ProvarRunner(String root, String job, byte[] jar, String javaHome, String antHome, String provarHome, String workingDirectory,
+                         String buildFile, Map<String, String> properties, OutputStream out) {
+        this.root = root;
+        this.job = job;
+        this.jar = jar;
+        this.javaHome = javaHome;
+        this.antHome = antHome;
+        this.provarHome = provarHome;
+        this.workingDirectory = workingDirectory;
+        this.buildFile = buildFile;
+        this.properties = properties;
+        this.out = new RemoteOutputStream(out);
+    }
+
+    /**
+     * Runs the invocation on the warm runner of the agent.
+     *
+     * @param root the root directory of the agent, the runners are kept below it
+     * @param job full name of the job, each job gets its own runner
+     * @param out receives the Ant output
+     * @return the exit code of the run, or {@code null} if the run has to be forked instead
+     */
+    @CheckForNull
+    static Integer run(@NonNull FilePath root, @NonNull String job, @NonNull ProvarInvocation invocation, @NonNull OutputStream out,
+                       @NonNull PrintStream logger) throws IOException, InterruptedException {
+        VirtualChannel channel = root.getChannel();
+        EnvVars env = invocation.getEnv();
+        String antHome = env.get("ANT_HOME");
+        String provarHome = env.get("PROVAR_HOME");
+        if (antHome == null || provarHome == null) {
+            logger.println("Warm runner: ANT_HOME and PROVAR_HOME are needed to start it, running Ant directly");
+            return null;
+        }
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (Map.Entry<String, String> e : env.entrySet()) {
+            properties.put("env." + e.getKey(), e.getValue());
+        }
+        String buildFile = null;
+        Iterator<String> args = invocation.getArgs().toList().iterator();
+        args.next(); // ant
+        while (args.hasNext()) {
+            String arg = args.next();
+            if (arg.equals("-file") && args.hasNext()) {
+                buildFile = args.next();
+            } else if (arg.startsWith("-D") && arg.indexOf('=') > 2) {
+                properties.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                logger.println("Warm runner: unsupported Ant argument " + arg + ", running Ant directly");
+                return null;
+            }
+        }
+        if (buildFile == null) {
+            return null;
+        }
+        return channel.call(new ProvarRunner(root.getRemote(), job, daemonJar(), env.get("JAVA_HOME"), antHome, provarHome,
+                invocation.getWorkingDirectory().getRemote(), buildFile, properties, out));
+    }
+
+    @Override
+    public Integer call() throws IOException {
+        PrintStream logger = new PrintStream(out, true, "UTF-8");
+        String java = javaHome != null ? javaHome : System.getProperty("java.home");
+        String key = Util.getDigestOf(job + "\n" + java + "\n" + antHome + "\n" + provarHome).substring(0, 12);
+        File dir = new File(new File(root, "provar-runner"), key);
+        Socket socket;
+        synchronized (LOCKS.computeIfAbsent(dir.getPath(), k -> new Object())) {
+            // the daemon gets the Ant command line with the secrets, so only files of this user are trusted
+            try {
+                secureDirectory(dir.getParentFile().toPath());
+                secureDirectory(dir.toPath());
+            } catch (IOException e) {
+                logger.println("Warm runner: " + e.getMessage() + ", running Ant directly");
+                return null;
+            }
+            socket = connect(dir);
+            if (socket == null) {
+                logger.println("Warm runner: starting a runner JVM for " + provarHome);
+                start(dir, java);
+                socket = connect(dir);
+                if (socket == null) {
+                    logger.println("Warm runner: the runner did not start, see " + new File(dir, "daemon.log") + ", running Ant directly");
+                    return null;
+                }
+            } else {
+                logger.println("Warm runner: reusing the runner JVM for " + provarHome);
+            }
+        }
+        try (Socket s = socket) {
+            DataOutputStream request = new DataOutputStream(s.getOutputStream());
+            request.writeUTF(token(dir));
+            request.writeUTF(workingDirectory);
+            request.writeUTF(buildFile);
+            request.writeInt(properties.size());
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                request.writeUTF(property.getKey());
+                request.writeUTF(property.getValue());
+            }
+            request.flush();
+
+            // reads time out now and then to notice an aborted build; closing the connection stops the run
+            s.setSoTimeout(1000);
+            DataInputStream response = new DataInputStream(new InterruptibleInput(s.getInputStream()));
+            String status = response.readUTF();
+            if (!ProvarRunnerDaemon.OK.equals(status)) {
+                logger.println("Warm runner: " + (ProvarRunnerDaemon.BUSY.equals(status) ? "busy with another build" : "refused the run") + ", running Ant directly");
+                return null;
+            }
+            byte[] buffer = new byte[8192];
+            for (int length = response.readInt(); length >= 0; length = response.readInt()) {
+                while (length > 0) {
+                    int read = response.read(buffer, 0, Math.min(length, buffer.length));
+                    if (read < 0) {
+                        throw new IOException("The warm runner exited during the run");
+                    }
+                    out.write(buffer, 0, read);
+                    length -= read;
+                }
+            }
+            out.flush();
+            return response.readInt();
+        }
+    }
+
+    @CheckForNull
+    private static Socket connect(File dir) {
+        try {
+            Properties daemon = load(dir);
+            if (daemon == null) {
+                return null;
+            }
+            return new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(daemon.getProperty("port")));
+        } catch (IOException | NumberFormatException e) {
+            // stale, the daemon is gone
+            new File(dir, ProvarRunnerDaemon.DAEMON_PROPERTIES).delete();
+            return null;
+        }
+    }
+
+    private static String token(File dir) throws IOException {
+        Properties daemon = load(dir);
+        return daemon != null ? daemon.getProperty("token", "") : "";
+    }
+
+    @CheckForNull
+    private static Properties load(File dir) throws IOException {
+        File file = new File(dir, ProvarRunnerDaemon.DAEMON_PROPERTIES);
+        if (!file.isFile()) {
+            return null;
+        }
+        checkOwner(file.toPath());
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    private void start(File dir, String java) throws IOException {
+        File runnerJar = new File(dir, "runner-" + Util.getDigestOf(new ByteArrayInputStream(jar)).substring(0, 12) + ".jar");
+        // the JVM loads whatever is there, so the jar is checked on every start rather than trusted for existing
+        if (!runnerJar.isFile() || !MessageDigest.isEqual(sha256(Files.readAllBytes(runnerJar.toPath())), sha256(jar))) {
+            writeOwnerOnly(runnerJar.toPath(), jar);
+        }
+        String classPath = String.join(File.pathSeparator, runnerJar.getPath(),
+                new File(antHome, "lib").getPath() + File.separator + "*",
+                new File(provarHome, "ant").getPath() + File.separator + "*");
+        List<String> command = new ArrayList<>();
+        command.add(new File(new File(java, "bin"), File.separatorChar == '\\' ? "java.exe" : "java").getPath());
+        command.add("-cp");
+        command.add(classPath);
+        command.add(ProvarRunnerDaemon.class.getName());
+        command.add(dir.getPath());
+        command.add(Integer.toString(MAX_RUNS));
+        command.add(Integer.toString(MEMORY_THRESHOLD));
+        command.add(Integer.toString(IDLE_TIMEOUT));
+        // the daemon outlives the build, so it must not inherit its environment (nor its process tree cookie)
+        ProcessBuilder builder = new ProcessBuilder(command).directory(dir).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(new File(dir, "daemon.log")));
+        builder.environment().keySet().removeIf(name -> name.startsWith("BUILD_") || name.equals("JENKINS_NODE_COOKIE"));
+        Process process = builder.start();
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT;
+        while (!new File(dir, ProvarRunnerDaemon.DAEMON_PROPERTIES).isFile()) {
+            if (!process.isAlive() || System.currentTimeMillis() > deadline) {
+                return;
+            }
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * Creates the directory readable by the current user only, or checks that an existing one belongs to the user
+     * and restricts it to them.
+     */
+    static void secureDirectory(@NonNull Path dir) throws IOException {
+        if (Files.isSymbolicLink(dir)) {
+            throw new IOException(dir + " is a symbolic link");
+        }
+        boolean posix = isPosix(dir);
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+            if (posix) {
+                Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIRECTORY));
+            } else {
+                Files.createDirectories(dir);
+            }
+        }
+        checkOwner(dir);
+        if (posix && !Files.getPosixFilePermissions(dir, LinkOption.NOFOLLOW_LINKS).equals(OWNER_ONLY_DIRECTORY)) {
+            Files.setPosixFilePermissions(dir, OWNER_ONLY_DIRECTORY);
+        }
+    }
+
+    /**
+     * Replaces the file atomically with a file that is readable by the current user only from the start.
+     */
+    static void writeOwnerOnly(@NonNull Path file, @NonNull byte[] content) throws IOException {
+        Path dir = file.getParent();
+        Path tmp = isPosix(dir) ? Files.createTempFile(dir, file.getFileName().toString(), ".tmp", PosixFilePermissions.asFileAttribute(OWNER_ONLY_FILE))
+                : Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, content);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Refuses a file or directory of another user, where the file system has owners.
+     */
+    private static void checkOwner(Path path) throws IOException {
+        if (!isPosix(path)) {
+            return;
+        }
+        UserPrincipal owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS);
+        UserPrincipal user = currentUser();
+        if (!owner.equals(user)) {
+            throw new IOException(path + " belongs to " + owner.getName() + " instead of " + user.getName());
+        }
+    }
+
+    /**
+     * The owner of files created by this JVM, which may differ from the {@code user.name} property in containers.
+     */
+    private static UserPrincipal currentUser() throws IOException {
+        UserPrincipal user = currentUser;
+        if (user == null) {
+            Path probe = Files.createTempFile("provar-runner", ".owner");
+            try {
+                user = currentUser = Files.getOwner(probe);
+            } finally {
+                Files.delete(probe);
+            }
+        }
+        return user;
+    }
+
+    private static boolean isPosix(Path path) {
+        return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    private static byte[] sha256(byte[] content) throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Socket input that keeps waiting through read timeouts until the calling thread is interrupted.
+     */
+    private static final class InterruptibleInput extends FilterInputStream {
+        InterruptibleInput(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            while (true) {
+                try {
+                    return super.read();
+                } catch (SocketTimeoutException e) {
+                    checkInterrupted();
+                }
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (true) {
+                try {
+                    return super.read(b, off, len);
+                } catch (SocketTimeoutException e) {
+                    checkInterrupted();
+                }
+            }
+        }
+
+        private static void checkInterrupted() throws InterruptedIOException {
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("Build aborted");
+            }
+        }
+    }
+
+    /**
+     * The daemon classes, packaged for the class path of the runner JVM.
+     */
+    static byte[] daemonJar() throws IOException {
+        return jar(ProvarRunnerDaemon.class, ProvarRunnerDaemon.Frames.class);
+    }
+
+    /**
+     * Packages classes of the plugin that run with only Ant on the class path.
+     */
+    static byte[] jar(Class<?>... classes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JarOutputStream jar = new JarOutputStream(bytes)) {
+            for (Class<?> c : classes) {
+                String name = c.getName().replace('.', '/') + ".class";
+                jar.putNextEntry(new JarEntry(name));
+                try (InputStream in = c.getClassLoader().getResourceAsStream(name)) {
+                    if (in == null) {
+                        throw new IOException("Unable to find " + name);
+                    }
+                    in.transferTo(jar);
+                }
+                jar.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
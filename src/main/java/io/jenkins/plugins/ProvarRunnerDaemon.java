@@ -0,0 +1,293 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import org.apache.tools.ant.DefaultLogger;
+import org.apache.tools.ant.DemuxOutputStream;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.ProjectHelper;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Long-lived JVM that runs Provar build files in-process, so repeated runs on an agent skip the JVM and Ant
+ * startup and find the Provar classes already loaded and compiled. Started and used by {@link ProvarRunner}.
+ *
+ * <p>Runs in a plain JVM with only Ant and Provar on the class path, so it must not use Jenkins classes.
+ * It listens on the loopback interface, announces its port and a random token in {@code daemon.properties},
+ * and runs one build at a time: each run gets a fresh Ant project, and system properties and streams are
+ * restored afterwards. It exits after a number of runs, when memory stays high after a run, when a client
+ * disconnects during a run (the build was aborted), or after being idle for a while.
+ */
+public final class ProvarRunnerDaemon {
+
+    static final String DAEMON_PROPERTIES = "daemon.properties";
+    static final String OK = "OK";
+    static final String BUSY = "BUSY";
+    static final String DENIED = "DENIED";
+
+    private final File dir;
+    private final int maxRuns;
+    private final int memoryThreshold;
+    private final String token;
+    private final AtomicBoolean busy = new AtomicBoolean();
+    private int runs;
+
+    private ProvarRunnerDaemon(File dir, int maxRuns, int memoryThreshold) {
+        this.dir = dir;
+        this.maxRuns = maxRuns;
+        this.memoryThreshold = memoryThreshold;
+        byte[] random = new byte[16];
+        new SecureRandom().nextBytes(random);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : random) {
+            hex.append(String.format("%02x", b));
+        }
+        this.token = hex.toString();
+    }
+
+    /**
+     * @param args the folder of the daemon, the number of runs before recycling, the percentage of the heap
+     *             in use after a run that triggers recycling, and the minutes to wait for a run before exiting
+     */
+    public static void main(String[] args) throws IOException {
+        ProvarRunnerDaemon daemon = new ProvarRunnerDaemon(new File(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+        daemon.serve(TimeUnit.MINUTES.toMillis(Long.parseLong(args[3])));
+    }
+
+    private void serve(long idleTimeout) throws IOException {
+        try (ServerSocket server = new ServerSocket(0, 10, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout((int) Math.min(idleTimeout, Integer.MAX_VALUE));
+            announce(server.getLocalPort());
+            while (true) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException e) {
+                    if (busy.get()) {
+                        continue;
+                    }
+                    exit(0);
+                    return;
+                }
+                if (!busy.compareAndSet(false, true)) {
+                    reply(socket, BUSY);
+                    continue;
+                }
+                Thread worker = new Thread(() -> handle(socket), "Provar run");
+                worker.start();
+            }
+        }
+    }
+
+    private void announce(int port) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("port", Integer.toString(port));
+        properties.setProperty("token", token);
+        properties.setProperty("pid", Long.toString(ProcessHandle.current().pid()));
+        // the token is the only thing keeping other users of the machine out, so it is never readable by them
+        Path tmp = dir.toPath().getFileSystem().supportedFileAttributeViews().contains("posix")
+                ? Files.createTempFile(dir.toPath(), DAEMON_PROPERTIES, ".tmp", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+                : Files.createTempFile(dir.toPath(), DAEMON_PROPERTIES, ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                properties.store(writer, "Provar runner daemon");
+            }
+            Files.move(tmp, new File(dir, DAEMON_PROPERTIES).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void handle(Socket socket) {
+        boolean recycle = true;
+        try (Socket s = socket) {
+            DataInputStream in = new DataInputStream(s.getInputStream());
+            DataOutputStream out = new DataOutputStream(s.getOutputStream());
+            if (!token.equals(in.readUTF())) {
+                out.writeUTF(DENIED);
+                out.flush();
+                recycle = false;
+                return;
+            }
+            File workingDirectory = new File(in.readUTF());
+            String buildFile = in.readUTF();
+            Map<String, String> properties = new LinkedHashMap<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                properties.put(in.readUTF(), in.readUTF());
+            }
+            out.writeUTF(OK);
+            out.flush();
+
+            // a client going away during the run means the build was aborted, and a run cannot be stopped halfway otherwise
+            AtomicBoolean finished = new AtomicBoolean();
+            Thread watchdog = new Thread(() -> {
+                try {
+                    in.read();
+                } catch (IOException e) {
+                    // closed as well
+                }
+                if (!finished.get()) {
+                    exit(1);
+                }
+            }, "Provar run watchdog");
+            watchdog.setDaemon(true);
+            watchdog.start();
+
+            int exitCode = run(workingDirectory, buildFile, properties, new Frames(out));
+            finished.set(true);
+            runs++;
+            recycle = runs >= maxRuns || memoryHigh();
+            synchronized (out) {
+                out.writeInt(-1);
+                out.writeInt(exitCode);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the client is gone
+        } finally {
+            if (recycle) {
+                exit(0);
+            }
+            busy.set(false);
+        }
+    }
+
+    private static int run(File workingDirectory, String buildFile, Map<String, String> properties, OutputStream output) {
+        PrintStream log = new PrintStream(output, true);
+        PrintStream savedOut = System.out;
+        PrintStream savedErr = System.err;
+        Properties savedProperties = (Properties) System.getProperties().clone();
+        ClassLoader savedLoader = Thread.currentThread().getContextClassLoader();
+
+        Project project = new Project();
+        DefaultLogger logger = new DefaultLogger();
+        logger.setOutputPrintStream(log);
+        logger.setErrorPrintStream(log);
+        logger.setMessageOutputLevel(Project.MSG_INFO);
+        project.addBuildListener(logger);
+        System.setOut(new PrintStream(new DemuxOutputStream(project, false), true));
+        System.setErr(new PrintStream(new DemuxOutputStream(project, true), true));
+        Throwable error = null;
+        try {
+            project.fireBuildStarted();
+            project.init();
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                project.setUserProperty(property.getKey(), property.getValue());
+            }
+            File file = new File(workingDirectory, buildFile);
+            project.setUserProperty("ant.file", file.getAbsolutePath());
+            ProjectHelper.configureProject(project, file);
+            project.executeTarget(project.getDefaultTarget());
+        } catch (Throwable t) {
+            error = t;
+        } finally {
+            project.fireBuildFinished(error);
+            System.setOut(savedOut);
+            System.setErr(savedErr);
+            System.setProperties(savedProperties);
+            Thread.currentThread().setContextClassLoader(savedLoader);
+            log.flush();
+        }
+        return error == null ? 0 : 1;
+    }
+
+    private boolean memoryHigh() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return used * 100 / runtime.maxMemory() >= memoryThreshold;
+    }
+
+    private void exit(int status) {
+        new File(dir, DAEMON_PROPERTIES).delete();
+        System.exit(status);
+    }
+
+    private static void reply(Socket socket, String status) {
+        try (Socket s = socket) {
+            DataOutputStream out = new DataOutputStream(s.getOutputStream());
+            out.writeUTF(status);
+            out.flush();
+        } catch (IOException e) {
+            // the client is gone
+        }
+    }
+
+    /**
+     * Output of a run, sent as length-prefixed frames so the exit code can follow it on the same connection.
+     */
+    static final class Frames extends OutputStream {
+        private final DataOutputStream out;
+
+        Frames(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (out) {
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+}
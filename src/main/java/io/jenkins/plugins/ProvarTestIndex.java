@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Index of which project files each Provar test case depends on: the page objects it uses and the
+ * test cases it calls. Used to run only the test cases affected by the files changed in a build.
+ * All paths are relative to the project folder and use {@code /} as the separator.
+ */
+final class ProvarTestIndex implements Serializable {
+
+    private static final Pattern PAGE_OBJECT = Pattern.compile("\\bpageobjects\\.([A-Za-z_][A-Za-z0-9_.]*[A-Za-z0-9_])");
+    private static final Pattern CALLED_TEST_CASE = Pattern.compile("\"([^\"<>]+\\.testcase)\"");
+
+    // file -> test cases that use it directly (every test case also uses itself)
+    private final Map<String, Set<String>> dependents = new TreeMap<>();
+
+    private void add(String file, String testCase) {
+        dependents.computeIfAbsent(file, k -> new TreeSet<>()).add(testCase);
+    }
+
+    /**
+     * Test cases reachable from the changed files, or {@code null} if a change cannot be traced
+     * through the index (e.g. the project file, custom code or the build file changed) and every test has to run.
+     */
+    @CheckForNull
+    Set<String> affected(@NonNull Collection<String> changed) {
+        Deque<String> queue = new ArrayDeque<>();
+        for (String path : changed) {
+            if (dependents.containsKey(path)) {
+                queue.add(path);
+            } else if (!path.startsWith("tests/") && !path.startsWith("src/pageobjects/")) {
+                // deleted test cases and unused page objects affect nothing, anything else might affect everything
+                return null;
+            }
+        }
+        Set<String> affected = new TreeSet<>();
+        while (!queue.isEmpty()) {
+            for (String testCase : dependents.getOrDefault(queue.poll(), Collections.emptySet())) {
+                if (affected.add(testCase)) {
+                    queue.add(testCase);
+                }
+            }
+        }
+        return affected;
+    }
+
+    static String pageObjectFile(String className) {
+        return "src/" + className.replace('.', '/') + ".java";
+    }
+
+    static String testCaseFile(String reference) {
+        String path = reference.replace('\\', '/');
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        return path.startsWith("tests/") ? path : "tests/" + path;
+    }
+
+    /**
+     * Builds the index by scanning the test cases of the project folder it is evaluated against.
+     */
+    static final class Builder extends MasterToSlaveFileCallable<ProvarTestIndex> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public ProvarTestIndex invoke(File projectDir, VirtualChannel channel) throws IOException {
+            ProvarTestIndex index = new ProvarTestIndex();
+            Path root = projectDir.toPath();
+            Path tests = root.resolve("tests");
+            if (!Files.isDirectory(tests)) {
+                return index;
+            }
+            List<Path> testCases = new ArrayList<>();
+            try (Stream<Path> paths = Files.walk(tests)) {
+                paths.filter(p -> p.getFileName().toString().endsWith(".testcase") && Files.isRegularFile(p)).forEach(testCases::add);
+            }
+            for (Path file : testCases) {
+                String testCase = root.relativize(file).toString().replace('\\', '/');
+                index.add(testCase, testCase);
+                String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                Matcher pageObject = PAGE_OBJECT.matcher(content);
+                while (pageObject.find()) {
+                    index.add(pageObjectFile(pageObject.group()), testCase);
+                }
+                Matcher called = CALLED_TEST_CASE.matcher(content);
+                while (called.find()) {
+                    index.add(testCaseFile(called.group(1)), testCase);
+                }
+            }
+            return index;
+        }
+    }
+
+    private static final long serialVersionUID = 1L;
+}
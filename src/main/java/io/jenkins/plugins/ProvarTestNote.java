@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import hudson.Extension;
+import hudson.MarkupText;
+import hudson.console.ConsoleAnnotationDescriptor;
+import hudson.console.ConsoleAnnotator;
+import hudson.console.ConsoleNote;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Marks a test case event in the console output of Provar, see {@link ProvarConsoleAnnotator}.
+ * Started test cases are listed in an outline next to the console, linking to their place in the log, with the
+ * duration Provar logs once they passed or failed.
+ */
+public class ProvarTestNote extends ConsoleNote<Object> {
+
+    public enum Kind {
+        Started("started", "Test Case Started", "Executing test case"),
+        Passed("passed", "Test Case Successful", "Test Case Passed"),
+        Failed("failed", "Test Case Failed"),
+        StepFailed("step-failed", "Step Failed");
+
+        private final String cssClass;
+        final byte[][] markers;
+        private volatile byte[] encoded;
+
+        Kind(String cssClass, String... markers) {
+            this.cssClass = cssClass;
+            this.markers = new byte[markers.length][];
+            for (int i = 0; i < markers.length; i++) {
+                this.markers[i] = ProvarConsoleAnnotator.bytes(markers[i]);
+            }
+        }
+
+        /**
+         * The encoded note, computed once since notes of the same kind are identical.
+         */
+        byte[] encoded() throws IOException {
+            if (encoded == null) {
+                encoded = new ProvarTestNote(this).encodeToBytes().toByteArray();
+            }
+            return encoded;
+        }
+    }
+
+    // the duration Provar appends to the outcome of a test case, e.g. "(12.5s)"
+    static final Pattern DURATION = Pattern.compile("\\(\\d+(?:\\.\\d+)?s\\)");
+
+    private final Kind kind;
+
+    public ProvarTestNote(Kind kind) {
+        this.kind = kind;
+    }
+
+    public Kind getKind() { return kind; }
+
+    @Override
+    public ConsoleAnnotator<?> annotate(Object context, MarkupText text, int charPos) {
+        text.addMarkup(0, text.length(), "<span class=\"provar-test-" + kind.cssClass + "\">", "</span>");
+        if (kind == Kind.Passed || kind == Kind.Failed) {
+            // the last one, a test case name may contain one as well
+            List<MarkupText.SubText> durations = text.findTokens(DURATION);
+            if (!durations.isEmpty()) {
+                durations.get(durations.size() - 1).surroundWith("<span class=\"provar-test-duration\">", "</span>");
+            }
+        }
+        return null;
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    @Extension
+    public static final class DescriptorImpl extends ConsoleAnnotationDescriptor {
+        @Override
+        public String getDisplayName() {
+            return "Provar test cases";
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.Serializable;
+
+/**
+ * Outcome of a single Provar test case, as read from the JUnit output in a Results folder.
+ */
+public class ProvarTestResult implements Serializable {
+
+    public enum Status {
+        Passed, Failed, Skipped
+    }
+
+    @NonNull
+    private final String name;
+    // relative to the tests folder, null for results recorded before paths were kept
+    @CheckForNull
+    private final String path;
+    @NonNull
+    private final Status status;
+    private final long duration;
+    @CheckForNull
+    private String group;
+    // runs of the test case in the build, more than one when failed test cases were rerun
+    private int attempts;
+
+    public ProvarTestResult(@NonNull String name, @NonNull Status status, long duration) {
+        this(name, null, status, duration);
+    }
+
+    ProvarTestResult(@NonNull String name, @CheckForNull String path, @NonNull Status status, long duration) {
+        this.name = name;
+        this.path = path;
+        this.status = status;
+        this.duration = duration;
+    }
+
+    /**
+     * The test case name, without the {@code .testcase} extension.
+     */
+    @NonNull
+    public String getName() { return name; }
+
+    /**
+     * The test case path relative to the {@code tests} folder, without the {@code .testcase} extension,
+     * or the name if the folder is not known.
+     */
+    @NonNull
+    public String getPath() { return path != null ? path : name; }
+    @NonNull
+    public Status getStatus() { return status; }
+    /**
+     * Duration of the test case in milliseconds.
+     */
+    public long getDuration() { return duration; }
+
+    /**
+     * The shard (or other partition of the run) that produced this result, if any.
+     */
+    @CheckForNull
+    public String getGroup() { return group; }
+
+    /**
+     * How many times the test case ran in the build, see {@link ProvarAutomation#getRerunFailedTests()}.
+     */
+    public int getAttempts() { return Math.max(attempts, 1); }
+
+    /**
+     * Whether the test case failed at first but passed when it was rerun.
+     */
+    public boolean isFlaky() { return status == Status.Passed && getAttempts() > 1; }
+
+    ProvarTestResult withGroup(@CheckForNull String group) {
+        ProvarTestResult copy = new ProvarTestResult(name, path, status, duration);
+        copy.group = group;
+        copy.attempts = attempts;
+        return copy;
+    }
+
+    ProvarTestResult withAttempts(int attempts) {
+        ProvarTestResult copy = withGroup(group);
+        copy.attempts = attempts;
+        return copy;
+    }
+
+    /**
+     * Strips any folder and the {@code .testcase} extension, so names from the JUnit output and
+     * from the {@code tests} folder can be compared.
+     */
+    @NonNull
+    static String testCaseName(@NonNull String path) {
+        String name = path.replace('\\', '/');
+        name = name.substring(name.lastIndexOf('/') + 1);
+        if (name.endsWith(".testcase")) {
+            name = name.substring(0, name.length() - ".testcase".length());
+        }
+        return name;
+    }
+
+    /**
+     * Strips the {@code tests} folder and the {@code .testcase} extension, so paths from the JUnit output and
+     * from the {@code tests} folder can be compared.
+     */
+    @NonNull
+    static String testCasePath(@NonNull String path) {
+        String relative = StringUtils.strip(path.replace('\\', '/'), "/");
+        if (relative.startsWith("tests/")) {
+            relative = relative.substring("tests/".length());
+        }
+        if (relative.endsWith(".testcase")) {
+            relative = relative.substring(0, relative.length() - ".testcase".length());
+        }
+        return relative;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + status + ", " + duration + "ms" + (getAttempts() > 1 ? ", " + getAttempts() + " attempts" : "") + ")";
+    }
+
+    private static final long serialVersionUID = 1L;
+}
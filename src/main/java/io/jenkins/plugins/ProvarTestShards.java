@@ -0,0 +1,147 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the test cases of a Provar test folder into shards that can run on separate agents.
+ */
+public final class ProvarTestShards {
+
+    private ProvarTestShards() {}
+
+    /**
+     * Returns the shard (1-based) out of {@code count} shards, balancing the shards by the recorded
+     * durations of the test cases. Test cases are assigned longest first to the shard with the least
+     * total duration so far; ties are broken by name and shard number, so every shard of the same
+     * checkout and history agrees on the split. Without any history this degrades to round-robin.
+     *
+     * @param durations keyed by the path relative to the folder the test cases are listed from, see
+     *                  {@link ProvarTestTimings#below(Map, String)}
+     */
+    @NonNull
+    static List<String> shard(@NonNull List<String> testCases, int count, int index, @NonNull Map<String, Long> durations) {
+        if (count < 1 || index < 1 || index > count) {
+            throw new IllegalArgumentException("Shard " + index + " of " + count + " does not exist");
+        }
+        long defaultDuration = ProvarTestTimings.defaultDuration(durations);
+        List<String> sorted = new ArrayList<>(testCases);
+        sorted.sort(Comparator.comparingLong((String testCase) -> duration(testCase, durations, defaultDuration)).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        long[] totals = new long[count];
+        List<String> shard = new ArrayList<>();
+        for (String testCase : sorted) {
+            int lightest = 0;
+            for (int i = 1; i < count; i++) {
+                if (totals[i] < totals[lightest]) {
+                    lightest = i;
+                }
+            }
+            totals[lightest] += duration(testCase, durations, defaultDuration);
+            if (lightest == index - 1) {
+                shard.add(testCase);
+            }
+        }
+        Collections.sort(shard);
+        return shard;
+    }
+
+    @NonNull
+    static List<String> shard(@NonNull List<String> testCases, int count, int index) {
+        return shard(testCases, count, index, Collections.emptyMap());
+    }
+
+    /**
+     * Estimated duration of the test cases in milliseconds.
+     */
+    static long estimate(@NonNull List<String> testCases, @NonNull Map<String, Long> durations) {
+        long defaultDuration = ProvarTestTimings.defaultDuration(durations);
+        long total = 0;
+        for (String testCase : testCases) {
+            total += duration(testCase, durations, defaultDuration);
+        }
+        return total;
+    }
+
+    private static long duration(String testCase, Map<String, Long> durations, long defaultDuration) {
+        Long duration = durations.get(ProvarTestResult.testCasePath(testCase));
+        if (duration == null) {
+            // recorded by name only, before paths were kept
+            duration = durations.get(ProvarTestResult.testCaseName(testCase));
+        }
+        return duration != null ? duration : defaultDuration;
+    }
+
+    /**
+     * Lists the {@code .testcase} files below the test folder, relative to that folder and using {@code /}
+     * as the separator so the paths can be fed straight into an Ant {@code includesfile}.
+     */
+    static final class ListTestCases extends MasterToSlaveFileCallable<List<String>> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public List<String> invoke(File testFolder, VirtualChannel channel) throws IOException {
+            if (!testFolder.isDirectory()) {
+                return Collections.emptyList();
+            }
+            String[] files = Util.createFileSet(testFolder, "**/*.testcase").getDirectoryScanner().getIncludedFiles();
+            List<String> testCases = new ArrayList<>(files.length);
+            for (String file : files) {
+                testCases.add(file.replace('\\', '/'));
+            }
+            Collections.sort(testCases);
+            return testCases;
+        }
+    }
+
+    /**
+     * Content of an Ant {@code includesfile} that selects the given test cases.
+     */
+    @NonNull
+    static String includes(@NonNull List<String> testCases) {
+        return String.join("\n", testCases) + "\n";
+    }
+
+    /**
+     * Content of an Ant {@code includesfile} that selects everything, matching the behaviour of an unfiltered fileset.
+     */
+    @NonNull
+    static String includeAll() {
+        return includes(Arrays.asList("**"));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.AbstractBuild;
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Durations of the Provar test cases of a job, used to balance shards. Every build carries the timings
+ * of its predecessor merged with its own results, so only the latest build needs to be read.
+ * Test cases are keyed by their path relative to the {@code tests} folder, see {@link ProvarTestResult#getPath()}.
+ */
+public class ProvarTestTimings extends InvisibleAction {
+
+    /**
+     * Duration assumed for test cases without any history, when nothing else is known.
+     */
+    static final long DEFAULT_DURATION = 60_000L;
+    /**
+     * How many older builds are searched for timings, e.g. across builds that did not run Provar.
+     */
+    private static final int MAX_HISTORY = 20;
+
+    private final Map<String, Long> durations = new TreeMap<>();
+    // the test cases this run recorded itself, the others come from the history
+    private Set<String> recorded = new TreeSet<>();
+
+    @NonNull
+    public synchronized Map<String, Long> getDurations() {
+        return Collections.unmodifiableMap(new TreeMap<>(durations));
+    }
+
+    /**
+     * Durations of the test cases this run recorded itself, without those taken over from the history.
+     */
+    @NonNull
+    synchronized Map<String, Long> getRecorded() {
+        Map<String, Long> result = new TreeMap<>();
+        if (recorded != null) {
+            for (String path : recorded) {
+                result.put(path, durations.get(path));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Timings recorded by the builds before this one. Runs of a multi-configuration project read the history
+     * of the parent build, so every shard sees the same timings and agrees on the split.
+     */
+    @NonNull
+    static Map<String, Long> history(@NonNull Run<?, ?> run) {
+        Run<?, ?> root = run instanceof AbstractBuild ? ((AbstractBuild<?, ?>) run).getRootBuild() : run;
+        int depth = 0;
+        for (Run<?, ?> previous = root.getPreviousBuild(); previous != null && depth < MAX_HISTORY; previous = previous.getPreviousBuild(), depth++) {
+            ProvarTestTimings timings = previous.getAction(ProvarTestTimings.class);
+            if (timings != null) {
+                return timings.getDurations();
+            }
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Returns the timings of the run, starting from the history if the run has none yet.
+     */
+    @NonNull
+    static synchronized ProvarTestTimings of(@NonNull Run<?, ?> run) {
+        ProvarTestTimings timings = run.getAction(ProvarTestTimings.class);
+        if (timings == null) {
+            timings = new ProvarTestTimings();
+            timings.durations.putAll(history(run));
+            run.addAction(timings);
+        }
+        return timings;
+    }
+
+    /**
+     * Adds the durations of the results. Durations are averaged with the previous value,
+     * so a single slow run does not move a test case to a shard of its own.
+     */
+    synchronized void record(@NonNull List<ProvarTestResult> results) {
+        for (ProvarTestResult result : results) {
+            if (result.getStatus() == ProvarTestResult.Status.Skipped || result.getDuration() <= 0) {
+                continue;
+            }
+            Long previous = durations.get(result.getPath());
+            durations.put(result.getPath(), previous == null ? result.getDuration() : (previous + result.getDuration()) / 2);
+            if (recorded == null) {
+                recorded = new TreeSet<>();
+            }
+            recorded.add(result.getPath());
+        }
+    }
+
+    /**
+     * Takes over the durations recorded by a matrix configuration, see {@link #getRecorded()}.
+     */
+    synchronized void merge(@NonNull Map<String, Long> recorded) {
+        durations.putAll(recorded);
+        if (this.recorded == null) {
+            this.recorded = new TreeSet<>();
+        }
+        this.recorded.addAll(recorded.keySet());
+    }
+
+    /**
+     * The durations of the test cases below a folder of {@code tests}, keyed by their path relative to it,
+     * as the test cases of a test folder are listed.
+     */
+    @NonNull
+    static Map<String, Long> below(@NonNull Map<String, Long> durations, @NonNull String folder) {
+        String prefix = ProvarTestResult.testCasePath(folder);
+        if (prefix.isEmpty()) {
+            return durations;
+        }
+        prefix += "/";
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, Long> e : durations.entrySet()) {
+            if (e.getKey().startsWith(prefix)) {
+                result.put(e.getKey().substring(prefix.length()), e.getValue());
+            } else if (e.getKey().indexOf('/') < 0) {
+                // recorded by name only, before paths were kept
+                result.putIfAbsent(e.getKey(), e.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Duration to assume for test cases without history: the median of the known durations.
+     */
+    static long defaultDuration(@NonNull Map<String, Long> durations) {
+        if (durations.isEmpty()) {
+            return DEFAULT_DURATION;
+        }
+        List<Long> sorted = new ArrayList<>(durations.values());
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Computer;
+import hudson.model.Descriptor;
+import hudson.model.Node;
+import hudson.model.Saveable;
+import hudson.model.TaskListener;
+import hudson.model.listeners.SaveableListener;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.NodeSpecific;
+import hudson.slaves.OfflineCause;
+import hudson.tools.ToolInstallation;
+import jenkins.model.Jenkins;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers tool installations resolved for a node, and the Provar executables found there, so builds do not
+ * repeat the remoting round trips of {@link NodeSpecific#forNode} and of looking up the executable.
+ * Entries of a node are dropped when it connects or disconnects, and all entries are dropped when the tool
+ * configuration is saved.
+ */
+final class ProvarToolCache {
+
+    private static final Map<String, ToolInstallation> INSTALLATIONS = new ConcurrentHashMap<>();
+    private static final Map<String, String> EXECUTABLES = new ConcurrentHashMap<>();
+
+    private ProvarToolCache() {}
+
+    /**
+     * Resolves the installation for the node, see {@link NodeSpecific#forNode}.
+     */
+    @NonNull
+    static ToolInstallation forNode(@NonNull ToolInstallation tool, @NonNull Node node, @NonNull TaskListener listener)
+            throws IOException, InterruptedException {
+        if (!(tool instanceof NodeSpecific)) {
+            return tool;
+        }
+        String key = key(node, tool.getClass().getName(), tool.getName(), tool.getHome());
+        ToolInstallation resolved = INSTALLATIONS.get(key);
+        if (resolved == null) {
+            resolved = (ToolInstallation) ((NodeSpecific<?>) tool).forNode(node, listener);
+            INSTALLATIONS.put(key, resolved);
+        }
+        return resolved;
+    }
+
+    /**
+     * The Provar executable found earlier for an installation already resolved for the node,
+     * see {@link ProvarAutomation.ProvarAutomationInstallation#getExecutable}.
+     */
+    @CheckForNull
+    static String executable(@NonNull ProvarAutomation.ProvarAutomationInstallation installation, @NonNull Node node) {
+        return EXECUTABLES.get(key(node, installation.getName(), installation.getHome()));
+    }
+
+    static void putExecutable(@NonNull ProvarAutomation.ProvarAutomationInstallation installation, @NonNull Node node, @NonNull String exe) {
+        EXECUTABLES.put(key(node, installation.getName(), installation.getHome()), exe);
+    }
+
+    static void invalidate(@NonNull String nodeName) {
+        String prefix = nodeName + '\0';
+        INSTALLATIONS.keySet().removeIf(key -> key.startsWith(prefix));
+        EXECUTABLES.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    static void invalidateAll() {
+        INSTALLATIONS.clear();
+        EXECUTABLES.clear();
+    }
+
+    private static String key(Node node, String... parts) {
+        StringBuilder key = new StringBuilder(node.getNodeName());
+        for (String part : parts) {
+            key.append('\0').append(part);
+        }
+        return key.toString();
+    }
+
+    @Extension
+    public static final class NodeListener extends ComputerListener {
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            invalidate(c.getName());
+        }
+
+        @Override
+        public void onOffline(@NonNull Computer c, @CheckForNull OfflineCause cause) {
+            invalidate(c.getName());
+        }
+    }
+
+    @Extension
+    public static final class ConfigurationListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            // tool installations are saved with their descriptors, or with the global configuration
+            if (o instanceof Descriptor || o instanceof Jenkins) {
+                invalidateAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+(function () {
+    // created on demand, once the first test case has started
+    var outline = null;
+    var count = 0;
+
+    function getOutline() {
+        if (outline == null) {
+            var sidePanel = document.getElementById("side-panel");
+            if (sidePanel == null) {
+                return null;
+            }
+            var box = document.createElement("div");
+            box.className = "provar-test-outline";
+            var title = document.createElement("h2");
+            title.textContent = "Provar Test Cases";
+            box.appendChild(title);
+            outline = document.createElement("ul");
+            box.appendChild(outline);
+            sidePanel.appendChild(box);
+        }
+        return outline;
+    }
+
+    Behaviour.specify("span.provar-test-started", "provar-test-started", 0, function (e) {
+        var list = getOutline();
+        if (list == null) {
+            return;
+        }
+        var id = "provar-test-" + (count++);
+        e.id = id;
+        var link = document.createElement("a");
+        link.href = "#" + id;
+        link.textContent = e.textContent.trim();
+        var item = document.createElement("li");
+        item.appendChild(link);
+        list.appendChild(item);
+    });
+
+    Behaviour.specify("span.provar-test-failed", "provar-test-failed", 0, function (e) {
+        if (outline != null && outline.lastChild != null) {
+            outline.lastChild.className = "provar-test-failed";
+        }
+    });
+
+    Behaviour.specify("span.provar-test-duration", "provar-test-duration", 0, function (e) {
+        if (outline != null && outline.lastChild != null) {
+            var duration = document.createElement("span");
+            duration.className = "provar-test-duration";
+            duration.textContent = " " + e.textContent;
+            outline.lastChild.appendChild(duration);
+        }
+    });
+}());
@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Label;
+import hudson.slaves.DumbSlave;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@WithJenkins
+class ProvarAgentAffinityTest {
+
+    private JenkinsRule jr;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        jr = rule;
+    }
+
+    @Test
+    void testWarmNodes() throws Exception {
+        FreeStyleProject project = jr.createFreeStyleProject();
+        ProvarAgentAffinity affinity = ProvarAgentAffinity.get();
+        affinity.record(project, "a", "Provar 2.12", "QA", true);
+        affinity.record(project, "b", "Provar 2.12", "QA", true);
+        affinity.record(project, "c", "Provar 2.12", "QA", false);
+        assertEquals(Arrays.asList("b", "a"), affinity.warmNodes(project));
+
+        // the agent lost its metadata cache
+        affinity.record(project, "b", "Provar 2.12", "QA", false);
+        assertEquals(Collections.singletonList("a"), affinity.warmNodes(project));
+
+        // without a Provar build step, the next build is expected to run like the last one
+        affinity.record(project, "c", "Provar 2.12", "UAT", true);
+        assertEquals(Collections.singletonList("c"), affinity.warmNodes(project));
+
+        project.renameTo("renamed");
+        assertEquals(Collections.singletonList("c"), affinity.warmNodes(project));
+        project.delete();
+        assertTrue(affinity.warmNodes(project).isEmpty());
+    }
+
+    @Test
+    void testDispatch() throws Exception {
+        Label label = Label.get("provar");
+        DumbSlave warm = jr.createOnlineSlave(label);
+        jr.createOnlineSlave(label);
+        FreeStyleProject project = jr.createFreeStyleProject();
+        project.setAssignedLabel(label);
+        ProvarAgentAffinity affinity = ProvarAgentAffinity.get();
+        affinity.setMaxWait(600);
+        affinity.record(project, warm.getNodeName(), "Provar 2.12", "QA", true);
+
+        FreeStyleBuild build = project.scheduleBuild2(0).get(60, TimeUnit.SECONDS);
+        assertEquals(warm.getNodeName(), build.getBuiltOnStr());
+
+        // an agent with warm caches that is offline is not waited for
+        warm.toComputer().setTemporarilyOffline(true, null);
+        build = project.scheduleBuild2(0).get(60, TimeUnit.SECONDS);
+        assertNotEquals(warm.getNodeName(), build.getBuiltOnStr());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.util.ArgumentListBuilder;
+import hudson.util.Secret;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The Ant command line and environment built for every Provar invocation, see {@link ProvarAutomation#prepare},
+ * and its conversion for Windows agents.
+ */
+@JmhBenchmark
+public class ProvarArgumentsBenchmark {
+
+    // a Jenkins instance for the secrets password
+    public static class Arguments extends JmhBenchmarkState {
+        // a parameterized job: a few empty parameters, a secret, and the usual Jenkins variables
+        final Map<String, String> buildVariables = new LinkedHashMap<>();
+        final Set<String> sensitive = new HashSet<>();
+        final EnvVars env = new EnvVars();
+        final FilePath workspace = new FilePath(new File("/home/jenkins/workspace/provar-regression"));
+        ProvarAutomation automation;
+        ArgumentListBuilder windows;
+
+        @Override
+        public void setup() {
+            for (int i = 0; i < 20; i++) {
+                buildVariables.put("PARAMETER_" + i, i % 5 == 0 ? "" : "value " + i);
+            }
+            buildVariables.put("SALESFORCE_PASSWORD", "secret");
+            sensitive.add("SALESFORCE_PASSWORD");
+            for (int i = 0; i < 60; i++) {
+                env.put("JENKINS_VARIABLE_" + i, "/home/jenkins/workspace/provar-regression/" + i);
+            }
+            automation = new ProvarAutomation("", "build.xml", "Regression", "All", "Dev",
+                    ProvarAutomation.Browser.Chrome_Headless, Secret.fromString("secret"),
+                    ProvarAutomation.SalesforceMetadataCacheSettings.Reuse, ProvarAutomation.ResultsPathSettings.Increment,
+                    "ProvarProject", "");
+            windows = build(this).toWindowsCommand();
+        }
+    }
+
+    /**
+     * The argument and environment handling of {@link ProvarAutomation#prepare}, without the agent.
+     */
+    static ArgumentListBuilder build(Arguments state) {
+        EnvVars env = new EnvVars(state.env);
+        ProvarAutomation.putBuildVariables(env, state.buildVariables);
+        ArgumentListBuilder args = new ArgumentListBuilder("ant.bat", "-file", "build.xml");
+        state.automation.addAntVariables(args, env, state.workspace, "Dev", "C:\\Users\\jenkins\\Provar\\.licenses",
+                state.buildVariables, state.sensitive);
+        return args;
+    }
+
+    @Benchmark
+    public ArgumentListBuilder arguments(Arguments state) {
+        return build(state);
+    }
+
+    @Benchmark
+    public ArgumentListBuilder toWindowsCommand(Arguments state) {
+        return ProvarAutomation.toWindowsCommand(state.windows);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import hudson.Functions;
+import hudson.model.Result;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsSessionRule;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * Runs the {@code runProvarAutomation} step with a fake {@code ant} that waits for a file to exist.
+ * JUnit 4, since restarting the controller within a test needs {@link JenkinsSessionRule}.
+ */
+public class ProvarAutomationStepPipelineTest {
+
+    @Rule
+    public JenkinsSessionRule sessions = new JenkinsSessionRule();
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File bin;
+    private File release;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeFalse("the fake ant is a shell script", Functions.isWindows());
+        bin = tmp.newFolder("bin");
+        release = new File(tmp.getRoot(), "release");
+        File ant = new File(bin, "ant");
+        Files.write(ant.toPath(), ("#!/bin/sh\n"
+                + "echo \"Fake Ant $*\"\n"
+                + "while [ ! -f '" + release + "' ]; do sleep 1; done\n"
+                + "echo \"Fake Ant done\"\n").getBytes(StandardCharsets.UTF_8));
+        assertTrue(ant.setExecutable(true));
+    }
+
+    @Test
+    public void testResumeAfterRestart() throws Throwable {
+        sessions.then(r -> {
+            WorkflowJob job = r.createProject(WorkflowJob.class, "provar");
+            job.setDefinition(new CpsFlowDefinition(script(), true));
+            WorkflowRun run = job.scheduleBuild2(0).waitForStart();
+            r.waitForMessage("Fake Ant", run);
+        });
+        sessions.then(r -> {
+            WorkflowRun run = r.jenkins.getItemByFullName("provar", WorkflowJob.class).getBuildByNumber(1);
+            assertTrue(run.isBuilding());
+            assertTrue(release.createNewFile());
+            r.assertBuildStatusSuccess(r.waitForCompletion(run));
+            r.assertLogContains("Fake Ant done", run);
+        });
+    }
+
+    @Test
+    public void testStop() throws Throwable {
+        sessions.then(r -> {
+            WorkflowJob job = r.createProject(WorkflowJob.class, "provar");
+            job.setDefinition(new CpsFlowDefinition(script(), true));
+            WorkflowRun run = job.scheduleBuild2(0).waitForStart();
+            r.waitForMessage("Fake Ant", run);
+            run.doStop();
+            r.assertBuildStatus(Result.ABORTED, r.waitForCompletion(run));
+            r.assertLogNotContains("Fake Ant done", run);
+        });
+    }
+
+    private String script() {
+        return "node {\n"
+                + "  writeFile file: 'Project/ANT/build.xml', text: '<project/>'\n"
+                + "  withEnv(['PATH+FAKE=" + bin + "']) {\n"
+                + "    runProvarAutomation provarAutomationName: '', buildFile: 'build.xml', testPlan: 'Regression',\n"
+                + "      testFolder: 'All', environment: 'Dev', browser: 'Chrome_Headless', secretsPassword: '',\n"
+                + "      salesforceMetadataCacheSetting: 'Reuse', resultsPathSetting: 'Increment', projectName: 'Project',\n"
+                + "      licensePath: '" + tmp.getRoot() + "'\n"
+                + "  }\n"
+                + "}";
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.util.ArgumentListBuilder;
+import org.jenkinsci.plugins.durabletask.BourneShellScript;
+import org.jenkinsci.plugins.durabletask.WindowsBatchScript;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProvarAutomationStepTest {
+
+    @Test
+    void testScript() {
+        EnvVars env = new EnvVars();
+        BourneShellScript unix = (BourneShellScript) ProvarAutomationStep.script(invocation(), true, env);
+        assertEquals("#!/bin/sh -e\n"
+                + "cd '/work/My Project/ANT'\n"
+                + "exec 'ant' '-file' 'build.xml' '-DTEST_NAME=it'\\''s' \"$PROVAR_MASKED_ARG_4\"\n", unix.getScript());
+        assertEquals("-DProvarSecretsPassword=s3cret", env.get("PROVAR_MASKED_ARG_4"));
+        assertFalse(unix.getScript().contains("s3cret"));
+
+        env = new EnvVars();
+        WindowsBatchScript windows = (WindowsBatchScript) ProvarAutomationStep.script(invocation(), false, env);
+        assertTrue(windows.getScript().contains("call ant -file build.xml -DTEST_NAME=it's \"%PROVAR_MASKED_ARG_4%\"\r\n"));
+        assertEquals("-DEMPTY=\"\"", ProvarAutomationStep.batchQuote("-DEMPTY="));
+        assertEquals("\"50%% off\"", ProvarAutomationStep.batchQuote("50% off"));
+    }
+
+    private static ProvarInvocation invocation() {
+        ArgumentListBuilder args = new ArgumentListBuilder("ant", "-file", "build.xml", "-DTEST_NAME=it's");
+        args.addMasked("-DProvarSecretsPassword=s3cret");
+        FilePath antDir = new FilePath(new File("/work/My Project/ANT"));
+        ProvarResultsWatcher watcher = new ProvarResultsWatcher(antDir, 0, null, -1, new ProvarResultsAction());
+        return new ProvarInvocation(args, new EnvVars(), new EnvVars(), antDir, antDir.child("includes.txt"), null, watcher,
+                new ProvarResultsRetention(0, 0, false), null, null, antDir.child(".provarCaches"));
+    }
+}
@@ -26,6 +26,7 @@ package io.jenkins.plugins;
 
 import org.htmlunit.html.HtmlForm;
 import org.htmlunit.html.HtmlPage;
+import hudson.EnvVars;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
 import hudson.model.Label;
@@ -44,6 +45,7 @@ import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -65,6 +67,8 @@ class ProvarAutomationTest {
     private static final String projectName = "Hackathon2022";
     private static final String provarAutomationName = "";
     private static final int quietPeriod = 5;
+    private static final int shardCount = 3;
+    private static final String shardIndex = "${SHARD}";
 
     private JenkinsRule jr;
 
@@ -76,7 +80,11 @@ class ProvarAutomationTest {
     @Test
     void testConfigRoundtrip() throws Exception {
         FreeStyleProject p = jr.createFreeStyleProject();
-        p.getBuildersList().add(new ProvarAutomation(provarAutomationName, buildFile, testPlan, testFolder, environment, browser, secretsPassword, salesforceMetadataCacheSetting, resultsPathSetting, projectName, licensePath));
+        ProvarAutomation before = new ProvarAutomation(provarAutomationName, buildFile, testPlan, testFolder, environment, browser, secretsPassword, salesforceMetadataCacheSetting, resultsPathSetting, projectName, licensePath);
+        before.setShardCount(shardCount);
+        before.setShardIndex(shardIndex);
+        before.setAdditionalEnvironments("UAT, Staging");
+        p.getBuildersList().add(before);
 
         try (WebClient webClient = jr.createWebClient()) {
             HtmlPage page = webClient.getPage(p, "configure");
@@ -98,6 +106,26 @@ class ProvarAutomationTest {
         assertEquals(resultsPathSetting,pa.getResultsPathSetting());
         assertEquals(projectName,pa.getProjectName());
         assertEquals(licensePath, pa.getLicensePath());
+        assertEquals(shardCount, pa.getShardCount());
+        assertEquals(shardIndex, pa.getShardIndex());
+        assertEquals("UAT, Staging", pa.getAdditionalEnvironments());
+    }
+
+    @Test
+    void testEnvironments() {
+        ProvarAutomation builder = new ProvarAutomation(provarAutomationName, buildFile, testPlan, testFolder, environment, browser, secretsPassword, salesforceMetadataCacheSetting, resultsPathSetting, projectName, licensePath);
+        builder.setAdditionalEnvironments("UAT, ${TARGET}\nDev\n\n Staging ");
+        EnvVars env = new EnvVars("TARGET", "Hotfix");
+        assertEquals(Arrays.asList("Dev", "UAT", "Hotfix", "Staging"), builder.getEnvironments(env));
+    }
+
+    @Test
+    void testRuns() throws Exception {
+        ProvarAutomation builder = new ProvarAutomation(provarAutomationName, buildFile, testPlan, testFolder, environment, browser, secretsPassword, salesforceMetadataCacheSetting, resultsPathSetting, projectName, licensePath);
+        assertEquals(1, builder.getRuns(new EnvVars()));
+        builder.setAdditionalBrowsers("Firefox");
+        builder.setAdditionalEnvironments("UAT, Staging");
+        assertEquals(6, builder.getRuns(new EnvVars()));
     }
 
     // TODO: Add tests for validations of file paths, specifically the build file.
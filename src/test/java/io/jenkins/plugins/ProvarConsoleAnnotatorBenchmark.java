@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Annotating recorded Provar output, as every byte of a build's console passes through {@link ProvarConsoleAnnotator}.
+ */
+@JmhBenchmark
+public class ProvarConsoleAnnotatorBenchmark {
+
+    private static final int REPEAT = 100;
+
+    // notes are signed with a key of the controller
+    public static class Output extends JmhBenchmarkState {
+        byte[] log;
+
+        @Override
+        public void setup() throws IOException {
+            try (InputStream in = ProvarConsoleAnnotatorBenchmark.class.getResourceAsStream("ProvarConsoleAnnotatorBenchmark/provar-output.log")) {
+                log = in.readAllBytes();
+            }
+            // encode the notes once, as a running build would have
+            annotate(log, 1);
+        }
+    }
+
+    /**
+     * Annotates the recorded output {@value #REPEAT} times, the score is per repetition.
+     */
+    @Benchmark
+    @OperationsPerInvocation(REPEAT)
+    public long annotate(Output state) throws IOException {
+        return annotate(state.log, REPEAT);
+    }
+
+    static long annotate(byte[] log, int repeat) throws IOException {
+        ProvarConsoleAnnotator annotator = new ProvarConsoleAnnotator(OutputStream.nullOutputStream());
+        try (annotator) {
+            for (int i = 0; i < repeat; i++) {
+                annotator.write(log);
+            }
+        }
+        return annotator.getByteCount();
+    }
+}
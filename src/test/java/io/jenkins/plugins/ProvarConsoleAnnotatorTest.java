@@ -0,0 +1,185 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import hudson.MarkupText;
+import hudson.console.ConsoleNote;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// notes are signed with a key of the controller
+@WithJenkins
+class ProvarConsoleAnnotatorTest {
+
+    private static final String log
+            = "\n"
+            + "runtests:\n"
+            + "     [Run-Test-Case] 2024-05-02 10:15:01 INFO Test Case Started: /Accounts/Create Account.testcase\n"
+            + "     [Run-Test-Case] 2024-05-02 10:15:03 INFO Executing step 1: Apex Connect\n"
+            + "     [Run-Test-Case] 2024-05-02 10:15:13 INFO Test Case Successful: /Accounts/Create Account.testcase (12.5s)\n"
+            + "     [Run-Test-Case] 2024-05-02 10:15:14 INFO Test Case Started: /Leads/Convert Lead.testcase\n"
+            + "     [Run-Test-Case] 2024-05-02 10:15:20 ERROR Step Failed: Assert Status\r\n"
+            + "     [Run-Test-Case] 2024-05-02 10:15:21 ERROR Test Case Failed: /Leads/Convert Lead.testcase (6.8s)\n"
+            + "     [echo] Test Case Failed is only matched in the Run-Test-Case task\n"
+            + "BUILD FAILED\n";
+
+    @Test
+    void testAnnotate() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ProvarConsoleAnnotator annotator = new ProvarConsoleAnnotator(out);
+        try (annotator) {
+            annotator.write(log.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(log.getBytes(StandardCharsets.UTF_8).length, annotator.getByteCount());
+        String annotated = out.toString(StandardCharsets.UTF_8);
+        assertEquals(log, ConsoleNote.removeNotes(annotated));
+        // the target, two starts, a pass, a step failure, a failure and the outcome
+        assertEquals(7, count(annotated, ConsoleNote.PREAMBLE_STR));
+    }
+
+    @Test
+    void testPrefix() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ProvarConsoleAnnotator annotator = new ProvarConsoleAnnotator(out, "[Firefox] ")) {
+            annotator.write(log.getBytes(StandardCharsets.UTF_8));
+        }
+        String annotated = out.toString(StandardCharsets.UTF_8);
+        String[] lines = ConsoleNote.removeNotes(annotated).split("\n");
+        assertEquals(log.split("\n").length, lines.length);
+        for (String line : lines) {
+            assertTrue(line.startsWith("[Firefox] "), line);
+        }
+        // the notes precede the prefix, so the test case outline still finds them
+        assertEquals(7, count(annotated, ConsoleNote.PREAMBLE_STR));
+    }
+
+    @Test
+    void testFailFast() throws IOException {
+        ProvarFailFast failFast = new ProvarFailFast(1, 0, 10);
+        try (ProvarConsoleAnnotator annotator = new ProvarConsoleAnnotator(new ByteArrayOutputStream(), null, failFast)) {
+            annotator.write(log.getBytes(StandardCharsets.UTF_8));
+        }
+        // the step failure and the echo line are not counted, the failed test case is
+        assertEquals("1 test cases failed", failFast.getReason());
+    }
+
+    @Test
+    void testDetailedLogLink() throws IOException {
+        String summary = "     [Run-Test-Case] 2024-05-02 10:15:01 INFO Test Case Started: /A.testcase [provar-log:Chrome:1:0]\n"
+                + "     [Run-Test-Case] 2024-05-02 10:15:21 ERROR Test Case Failed: /A.testcase (6.8s) [provar-log:Chrome:1:5120]\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ProvarConsoleAnnotator annotator = new ProvarConsoleAnnotator(out)) {
+            annotator.write(summary.getBytes(StandardCharsets.UTF_8));
+        }
+        String annotated = out.toString(StandardCharsets.UTF_8);
+        assertEquals(summary, ConsoleNote.removeNotes(annotated));
+        // a test case note and a link per line
+        assertEquals(4, count(annotated, ConsoleNote.PREAMBLE_STR));
+    }
+
+    @Test
+    void testDuration() {
+        MarkupText text = new MarkupText("Test Case Successful: /Accounts/Create Account (1s).testcase (12.5s)");
+        new ProvarTestNote(ProvarTestNote.Kind.Passed).annotate(null, text, 0);
+        assertEquals("<span class=\"provar-test-passed\">Test Case Successful: /Accounts/Create Account (1s).testcase "
+                + "<span class=\"provar-test-duration\">(12.5s)</span></span>", text.toString(false));
+
+        text = new MarkupText("Test Case Started: /Accounts/Create Account (1s).testcase");
+        new ProvarTestNote(ProvarTestNote.Kind.Started).annotate(null, text, 0);
+        assertFalse(text.toString(false).contains("provar-test-duration"));
+    }
+
+    @Test
+    void testEvent() {
+        assertEquals(ProvarTestNote.Kind.Started, event("  [Run-Test-Case] Test Case Started: /A.testcase"));
+        assertEquals(ProvarTestNote.Kind.Passed, event("[Run-Test-Case] Test Case Passed: /A.testcase"));
+        assertEquals(ProvarTestNote.Kind.StepFailed, event("\t[Run-Test-Case] Step Failed: Click"));
+        assertNull(event("[Run-Test-Case] Test Case"));
+        assertNull(event("[echo] Test Case Started"));
+        assertNull(event(""));
+    }
+
+    @Test
+    void testThroughput() throws IOException {
+        StringBuilder chunk = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            chunk.append("     [Run-Test-Case] 2024-05-02 10:15:03 INFO Executing step ").append(i)
+                    .append(": UI Action on Account Edit page, field Name, value Acme ").append(i).append('\n');
+        }
+        chunk.append("     [Run-Test-Case] 2024-05-02 10:15:13 INFO Test Case Successful: /Accounts/Create Account.testcase\n");
+        byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+        int chunks = 2_000;
+
+        CountingOutputStream out = new CountingOutputStream();
+        long start = System.nanoTime();
+        try (ProvarConsoleAnnotator annotator = new ProvarConsoleAnnotator(out)) {
+            for (int i = 0; i < chunks; i++) {
+                annotator.write(bytes);
+            }
+        }
+        long elapsed = Math.max(System.nanoTime() - start, 1);
+        long total = (long) bytes.length * chunks;
+        double megabytesPerSecond = total / 1048576.0 / (elapsed / 1e9);
+        System.out.printf("Annotated %d MB at %.1f MB/s%n", total / 1048576, megabytesPerSecond);
+
+        assertTrue(out.count > total, "test case notes are written");
+        // very conservative, to catch per-line decoding or regular expressions on slow CI agents
+        assertTrue(megabytesPerSecond > 20, "annotating at " + megabytesPerSecond + " MB/s");
+    }
+
+    private static ProvarTestNote.Kind event(String line) {
+        byte[] b = line.getBytes(StandardCharsets.UTF_8);
+        return ProvarConsoleAnnotator.testEvent(b, b.length);
+    }
+
+    private static int count(String s, String part) {
+        int n = 0;
+        for (int i = s.indexOf(part); i >= 0; i = s.indexOf(part, i + part.length())) {
+            n++;
+        }
+        return n;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
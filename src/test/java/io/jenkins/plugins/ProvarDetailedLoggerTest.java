@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Target;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProvarDetailedLoggerTest {
+
+    private static final Pattern MARKER = Pattern.compile("\\[provar-log:(\\w+):(\\d+):(\\d+)]$");
+
+    @TempDir
+    File dir;
+
+    @Test
+    void testOffload() throws IOException {
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        run(console, 500);
+        List<String> lines = List.of(console.toString(StandardCharsets.UTF_8).split(System.lineSeparator()));
+        assertTrue(lines.contains("runtests:"), lines.toString());
+        assertTrue(lines.contains("BUILD SUCCESSFUL"), lines.toString());
+        List<String> events = new ArrayList<>();
+        for (String line : lines) {
+            assertFalse(line.contains("Executing step"), line);
+            if (line.contains("[Run-Test-Case]")) {
+                events.add(line);
+            }
+        }
+        // a start and a finish per test case
+        assertEquals(20, events.size());
+        // every event links to its own line in the detailed log
+        for (String event : events) {
+            Matcher m = MARKER.matcher(event);
+            assertTrue(m.find(), event);
+            assertEquals("Chrome", m.group(1));
+            String logged = event.substring(0, m.start() - 1);
+            assertEquals(logged, firstLine(new File(dir, ProvarDetailedLogger.chunkName(Integer.parseInt(m.group(2)))), Long.parseLong(m.group(3))));
+        }
+        assertTrue(new File(dir, ProvarDetailedLogger.chunkName(2)).isFile(), "the log is split into chunks");
+    }
+
+    @Test
+    void testRerunContinues() throws IOException {
+        run(new ByteArrayOutputStream(), 1000);
+        String[] chunks = dir.list();
+        run(new ByteArrayOutputStream(), 1000);
+        assertEquals(2 * chunks.length, dir.list().length);
+    }
+
+    @Test
+    void testEvents() {
+        for (ProvarTestNote.Kind kind : ProvarTestNote.Kind.values()) {
+            for (byte[] marker : kind.markers) {
+                String line = "     [Run-Test-Case] 2024-05-02 10:15:01 INFO " + new String(marker, StandardCharsets.US_ASCII) + ": /A.testcase";
+                assertTrue(ProvarDetailedLogger.isTestEvent(line), line);
+            }
+        }
+        assertFalse(ProvarDetailedLogger.isTestEvent("     [echo] Test Case Started"));
+        assertFalse(ProvarDetailedLogger.isTestEvent("     [Run-Test-Case] Executing step 1: Apex Connect"));
+    }
+
+    @Test
+    void testWithoutDirectory() {
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        ProvarDetailedLogger logger = logger(null, console, 500);
+        logger.printMessage("     [Run-Test-Case] Executing step 1: Apex Connect", new PrintStream(console, true), Project.MSG_INFO);
+        assertEquals("     [Run-Test-Case] Executing step 1: Apex Connect" + System.lineSeparator(), console.toString(StandardCharsets.UTF_8));
+    }
+
+    private void run(ByteArrayOutputStream console, long chunkSize) {
+        ProvarDetailedLogger logger = logger(dir, console, chunkSize);
+        PrintStream out = new PrintStream(console, true);
+        Project project = new Project();
+        Target target = new Target();
+        target.setName("runtests");
+        target.setProject(project);
+        logger.buildStarted(new BuildEvent(project));
+        logger.targetStarted(new BuildEvent(target));
+        for (int i = 0; i < 10; i++) {
+            logger.printMessage("     [Run-Test-Case] 2024-05-02 10:15:01 INFO Test Case Started: /Test " + i + ".testcase", out, Project.MSG_INFO);
+            for (int step = 0; step < 5; step++) {
+                logger.printMessage("     [Run-Test-Case] 2024-05-02 10:15:02 INFO Executing step " + step + ": UI Action", out, Project.MSG_INFO);
+            }
+            logger.printMessage("     [Run-Test-Case] 2024-05-02 10:15:03 INFO Test Case Successful: /Test " + i + ".testcase", out, Project.MSG_INFO);
+        }
+        logger.buildFinished(new BuildEvent(project));
+    }
+
+    private static ProvarDetailedLogger logger(File dir, ByteArrayOutputStream console, long chunkSize) {
+        ProvarDetailedLogger logger = new ProvarDetailedLogger(dir, "Chrome", chunkSize);
+        logger.setMessageOutputLevel(Project.MSG_INFO);
+        logger.setOutputPrintStream(new PrintStream(console, true));
+        logger.setErrorPrintStream(new PrintStream(console, true));
+        return logger;
+    }
+
+    private static String firstLine(File chunk, long offset) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(chunk.toPath()))) {
+            assertEquals(offset, in.skip(offset));
+            String rest = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            return rest.substring(0, rest.indexOf(System.lineSeparator()));
+        }
+    }
+}
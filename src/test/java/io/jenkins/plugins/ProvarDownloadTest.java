@@ -0,0 +1,213 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import hudson.model.TaskListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProvarDownloadTest {
+
+    private static final int CHUNK = 64 * 1024;
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    @TempDir
+    File dir;
+
+    private HttpServer server;
+    private URL url;
+    private final byte[] data = new byte[CHUNK * 10 + 123];
+    private volatile String etag = "\"v1\"";
+    private volatile boolean ranges = true;
+    // range requests answered with a range, the others get the whole file
+    private final AtomicInteger partial = new AtomicInteger(Integer.MAX_VALUE);
+    // ranges starting at these offsets fail half way
+    private volatile LongPredicate failing = start -> false;
+    private final List<Long> requested = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() throws IOException {
+        new Random(42).nextBytes(data);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/provar.zip", this::serve);
+        server.start();
+        url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/provar.zip");
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void testParallelRanges() throws Exception {
+        File target = new File(dir, "provar.zip.part");
+        new ProvarDownload(4, CHUNK, 1).download(url, target, TaskListener.NULL);
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        // the probe and every chunk
+        assertEquals(1 + 11, requested.size());
+        assertFalse(new File(dir, "provar.zip.part" + ProvarDownload.STATE_SUFFIX).exists());
+    }
+
+    @Test
+    void testRetry() throws Exception {
+        List<Long> failed = Collections.synchronizedList(new ArrayList<>());
+        failing = start -> start > 0 && !failed.contains(start) && failed.add(start);
+        File target = new File(dir, "provar.zip.part");
+        new ProvarDownload(4, CHUNK, 2).download(url, target, TaskListener.NULL);
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    void testResume() throws Exception {
+        File target = new File(dir, "provar.zip.part");
+        failing = start -> start >= 6L * CHUNK;
+        assertThrows(IOException.class, () -> new ProvarDownload(2, CHUNK, 1).download(url, target, TaskListener.NULL));
+
+        failing = start -> false;
+        requested.clear();
+        new ProvarDownload(2, CHUNK, 1).download(url, target, TaskListener.NULL);
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        // the chunks completed before the failing ones started are not downloaded again
+        for (long start = CHUNK; start < 4L * CHUNK; start += CHUNK) {
+            assertFalse(requested.contains(start), "requested " + start);
+        }
+    }
+
+    @Test
+    void testChangedOnServer() throws Exception {
+        File target = new File(dir, "provar.zip.part");
+        failing = start -> start >= 6L * CHUNK;
+        assertThrows(IOException.class, () -> new ProvarDownload(2, CHUNK, 1).download(url, target, TaskListener.NULL));
+
+        failing = start -> false;
+        etag = "\"v2\"";
+        data[0]++;
+        requested.clear();
+        new ProvarDownload(2, CHUNK, 1).download(url, target, TaskListener.NULL);
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        assertEquals(1 + 11, requested.size());
+    }
+
+    @Test
+    void testNoValidator() throws Exception {
+        etag = null;
+        File target = new File(dir, "provar.zip.part");
+        failing = start -> start >= 6L * CHUNK;
+        assertThrows(IOException.class, () -> new ProvarDownload(2, CHUNK, 1).download(url, target, TaskListener.NULL));
+        assertFalse(new File(dir, "provar.zip.part" + ProvarDownload.STATE_SUFFIX).exists());
+
+        failing = start -> false;
+        requested.clear();
+        new ProvarDownload(2, CHUNK, 1).download(url, target, TaskListener.NULL);
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        assertEquals(1 + 11, requested.size());
+    }
+
+    @Test
+    void testNoRanges() throws Exception {
+        ranges = false;
+        File target = new File(dir, "provar.zip.part");
+        new ProvarDownload(4, CHUNK, 1).download(url, target, TaskListener.NULL);
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    void testWeakETag() throws Exception {
+        etag = "W/\"v1\"";
+        File target = new File(dir, "provar.zip.part");
+        failing = start -> start >= 6L * CHUNK;
+        assertThrows(IOException.class, () -> new ProvarDownload(2, CHUNK, 1).download(url, target, TaskListener.NULL));
+        // a weak ETag is no validator, so nothing is resumed
+        assertFalse(new File(dir, "provar.zip.part" + ProvarDownload.STATE_SUFFIX).exists());
+
+        failing = start -> false;
+        new ProvarDownload(2, CHUNK, 1).download(url, target, TaskListener.NULL);
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    void testWholeFileForRange() throws Exception {
+        // only the probe gets a range
+        partial.set(1);
+        File target = new File(dir, "provar.zip.part");
+        new ProvarDownload(4, CHUNK, 1).download(url, target, TaskListener.NULL);
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        assertFalse(new File(dir, "provar.zip.part" + ProvarDownload.STATE_SUFFIX).exists());
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try {
+            if (etag != null) {
+                exchange.getResponseHeaders().set("ETag", etag);
+            }
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            Matcher m = RANGE.matcher(range == null ? "" : range);
+            if (!ranges || !m.matches() || ifRange != null && !ifRange.equals(etag) || partial.getAndDecrement() <= 0) {
+                exchange.sendResponseHeaders(200, data.length);
+                exchange.getResponseBody().write(data);
+                return;
+            }
+            long start = Long.parseLong(m.group(1));
+            long end = Math.min(Long.parseLong(m.group(2)), data.length - 1);
+            requested.add(start);
+            int length = (int) (end - start + 1);
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + data.length);
+            exchange.sendResponseHeaders(206, length);
+            OutputStream out = exchange.getResponseBody();
+            if (failing.test(start)) {
+                out.write(data, (int) start, length / 2);
+                out.flush();
+                // drop the connection before the range is complete
+                throw new IOException("failing " + start);
+            }
+            out.write(data, (int) start, length);
+        } finally {
+            exchange.close();
+        }
+    }
+}
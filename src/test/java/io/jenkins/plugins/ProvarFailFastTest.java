@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.jenkins.plugins.ProvarTestNote.Kind.Failed;
+import static io.jenkins.plugins.ProvarTestNote.Kind.Passed;
+import static io.jenkins.plugins.ProvarTestNote.Kind.Started;
+import static io.jenkins.plugins.ProvarTestNote.Kind.StepFailed;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProvarFailFastTest {
+
+    @Test
+    void testDisabled() {
+        assertNull(ProvarFailFast.of(0, 0, 10));
+        assertNull(ProvarFailFast.of(0, 50, 0));
+        assertNotNull(ProvarFailFast.of(3, 0, 10));
+    }
+
+    @Test
+    void testMaxFailures() {
+        ProvarFailFast failFast = new ProvarFailFast(2, 0, 10);
+        AtomicInteger trips = new AtomicInteger();
+        failFast.onTrip(trips::incrementAndGet);
+        failFast.record(Started);
+        failFast.record(StepFailed);
+        failFast.record(Failed);
+        failFast.record(Passed);
+        assertFalse(failFast.isTripped());
+        failFast.record(Failed);
+        assertTrue(failFast.isTripped());
+        assertEquals("2 test cases failed", failFast.getReason());
+        failFast.record(Failed);
+        assertEquals(1, trips.get());
+
+        assertTrue(failFast.stop());
+        assertFalse(failFast.stop(), "stopped only once");
+        failFast.reset();
+        assertFalse(failFast.isTripped());
+    }
+
+    @Test
+    void testPercentOfWindow() {
+        // half of the first four, reached at the second failure
+        ProvarFailFast failFast = new ProvarFailFast(0, 50, 4);
+        failFast.record(Failed);
+        assertFalse(failFast.isTripped());
+        failFast.record(Failed);
+        assertTrue(failFast.isTripped());
+
+        // failures after the window do not count
+        failFast = new ProvarFailFast(0, 50, 4);
+        for (int i = 0; i < 4; i++) {
+            failFast.record(i == 0 ? Failed : Passed);
+        }
+        for (int i = 0; i < 10; i++) {
+            failFast.record(Failed);
+        }
+        assertFalse(failFast.isTripped());
+    }
+
+    @Test
+    void testTrippedBeforeOnTrip() {
+        ProvarFailFast failFast = new ProvarFailFast(1, 0, 10);
+        failFast.record(Failed);
+        AtomicInteger trips = new AtomicInteger();
+        failFast.onTrip(trips::incrementAndGet);
+        assertEquals(1, trips.get());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProvarFolderIndexTest {
+
+    @TempDir
+    File projectDir;
+
+    @Test
+    void testList() {
+        mkdirs("plans/Regression/Sales Cloud", "plans/Smoke", "tests/Accounts", "tests/Leads/Convert", "tests/.svn", "src/pageobjects");
+        ProvarFolderIndex.Snapshot snapshot = new ProvarFolderIndex.Lister(null, "Project").invoke(projectDir, null);
+        assertEquals(Arrays.asList("Regression", "Regression/Sales Cloud", "Smoke"), snapshot.paths(ProvarFolderIndex.PLANS));
+        assertEquals(Arrays.asList("Accounts", "Leads", "Leads/Convert"), snapshot.paths(ProvarFolderIndex.TESTS));
+        assertTrue(snapshot.contains(ProvarFolderIndex.TESTS, ProvarFolderIndex.normalize("\\Leads\\Convert\\")));
+        assertFalse(snapshot.contains(ProvarFolderIndex.PLANS, "Accounts"));
+        assertFalse(snapshot.truncated);
+    }
+
+    @Test
+    void testIncremental() {
+        mkdirs("plans/Smoke", "tests/Accounts/Create", "tests/Leads");
+        ProvarFolderIndex.Snapshot first = new ProvarFolderIndex.Lister(null, "Project").invoke(projectDir, null);
+        mkdirs("tests/Leads/Convert");
+        // the modification time has a resolution of a second on some file systems
+        assertTrue(new File(projectDir, "tests/Leads").setLastModified(first.folders.get("tests/Leads").modified + 2000));
+
+        ProvarFolderIndex.Snapshot second = new ProvarFolderIndex.Lister(first, "Project").invoke(projectDir, null);
+        assertEquals(Arrays.asList("Accounts", "Accounts/Create", "Leads", "Leads/Convert"), second.paths(ProvarFolderIndex.TESTS));
+        // unchanged folders are not listed again
+        assertSame(first.folders.get("tests/Accounts"), second.folders.get("tests/Accounts"));
+        assertNotSame(first.folders.get("tests/Leads"), second.folders.get("tests/Leads"));
+    }
+
+    private void mkdirs(String... paths) {
+        for (String path : paths) {
+            assertTrue(new File(projectDir, path).mkdirs());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.util.ArgumentListBuilder;
+import hudson.util.StreamTaskListener;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProvarInvocationTest {
+
+    @TempDir
+    File project;
+
+    @Test
+    void testRerun() throws Exception {
+        File results = new File(project, "ANT/Results");
+        assertTrue(results.mkdirs());
+        Files.write(new File(results, "TEST-Regression.xml").toPath(), ("<testsuite>"
+                + "<testcase name=\"/Accounts/Create Account.testcase\" time=\"1.5\"/>"
+                + "<testcase name=\"/Leads/Convert Lead.testcase\" time=\"2\"><failure message=\"Assert Status\"/></testcase>"
+                + "</testsuite>").getBytes(StandardCharsets.UTF_8));
+        ProvarResultsWatcher watcher = new ProvarResultsWatcher(new FilePath(new File(project, "ANT")), 0, null, -1, new ProvarResultsAction());
+        EnvVars env = new EnvVars();
+        ProvarInvocation invocation = new ProvarInvocation(new ArgumentListBuilder("ant", "-file", "build.xml"), new EnvVars(), env, new FilePath(project),
+                null, null, watcher, new ProvarResultsRetention(0, 0, false), null, null, new FilePath(project));
+        invocation.setReruns(1, new FilePath(project));
+        StreamTaskListener listener = StreamTaskListener.fromStdout();
+
+        assertFalse(invocation.rerun(0, listener), "nothing to rerun after a successful run");
+        assertTrue(invocation.rerun(1, listener));
+        assertEquals("**/Convert Lead.testcase\n", new FilePath(new File(env.get("TEST_CASES_FILE"))).readToString());
+        assertTrue(invocation.getArgs().toList().contains("-D" + ProvarCompileCache.SKIP_PROPERTY + "=true"));
+        assertNotSame(watcher, invocation.getWatcher());
+
+        assertFalse(invocation.rerun(1, listener), "no reruns left");
+        invocation.cleanUp();
+        assertFalse(new File(env.get("TEST_CASES_FILE")).exists());
+    }
+
+    @Test
+    void testOnlyOwnVariablesKept() {
+        EnvVars base = new EnvVars("API_TOKEN", "s3cret", "PATH", "/usr/bin");
+        EnvVars env = new EnvVars(base);
+        env.put("BROWSER", "Chrome");
+        ProvarResultsWatcher watcher = new ProvarResultsWatcher(new FilePath(new File(project, "ANT")), 0, null, -1, new ProvarResultsAction());
+        ProvarInvocation invocation = new ProvarInvocation(new ArgumentListBuilder("ant"), base, env, new FilePath(project),
+                null, null, watcher, new ProvarResultsRetention(0, 0, false), null, null, new FilePath(project));
+        assertEquals(Collections.singletonMap("BROWSER", "Chrome"), invocation.getVariables());
+        // nothing to restore while the environment is known
+        invocation.restoreEnv(new EnvVars());
+        assertEquals("s3cret", invocation.getEnv().get("API_TOKEN"));
+    }
+
+    @Test
+    void testAttempts() {
+        ProvarTestResult result = new ProvarTestResult("Convert Lead", ProvarTestResult.Status.Passed, 2000);
+        assertEquals(1, result.getAttempts());
+        assertFalse(result.isFlaky());
+        ProvarTestResult rerun = result.withAttempts(2).withGroup("Chrome");
+        assertEquals(2, rerun.getAttempts());
+        assertTrue(rerun.isFlaky());
+        assertFalse(new ProvarTestResult("Convert Lead", ProvarTestResult.Status.Failed, 2000).withAttempts(3).isFlaky());
+    }
+}
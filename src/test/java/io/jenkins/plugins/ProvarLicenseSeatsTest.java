@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import hudson.AbortException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProvarLicenseSeatsTest {
+
+    private final ProvarLicenseSeats seats = new ProvarLicenseSeats(license -> license.equals("/licenses") ? 2 : -1);
+
+    @Test
+    void testNoPool() throws AbortException {
+        assertNull(seats.request("/other", 1, "a"));
+    }
+
+    @Test
+    void testTooManySeats() {
+        assertThrows(AbortException.class, () -> seats.request("/licenses", 3, "a"));
+    }
+
+    @Test
+    void testFairQueue() throws AbortException {
+        ProvarLicenseSeats.Request a = seats.request("/licenses", 1, "a");
+        ProvarLicenseSeats.Request b = seats.request("/licenses", 2, "b");
+        ProvarLicenseSeats.Request c = seats.request("/licenses", 1, "c");
+        assertTrue(a.future.isDone());
+        assertFalse(b.future.isDone());
+        // a seat is free, but c does not overtake b
+        assertFalse(c.future.isDone());
+        assertEquals(0, b.position());
+        assertEquals(1, c.position());
+
+        a.future.join().release();
+        assertTrue(b.future.isDone());
+        assertFalse(c.future.isDone());
+        assertEquals(2, seats.held("/licenses"));
+
+        ProvarLicenseSeats.Lease lease = b.future.join();
+        lease.release();
+        // released once
+        lease.release();
+        assertTrue(c.future.isDone());
+        assertEquals(1, seats.held("/licenses"));
+    }
+
+    @Test
+    void testCancel() throws AbortException {
+        ProvarLicenseSeats.Request a = seats.request("/licenses", 1, "a");
+        ProvarLicenseSeats.Request b = seats.request("/licenses", 2, "b");
+        ProvarLicenseSeats.Request c = seats.request("/licenses", 1, "c");
+        b.cancel();
+        assertTrue(b.future.isCancelled());
+        // the request behind the cancelled one fits now
+        assertTrue(c.future.isDone());
+        assertEquals(2, seats.held("/licenses"));
+        // cancelling a granted request releases its seats
+        a.cancel();
+        assertEquals(1, seats.held("/licenses"));
+    }
+
+    @Test
+    void testReclaim() throws AbortException {
+        ProvarLicenseSeats.Lease lease = seats.request("/licenses", 2, "a").future.join();
+        // after a restart, the seats of running builds are taken again even if others got them meanwhile
+        ProvarLicenseSeats.Request b = seats.request("/licenses", 1, "b");
+        lease.reclaim();
+        assertEquals(4, seats.held("/licenses"));
+        lease.release();
+        assertFalse(b.future.isDone());
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProvarMetadataCacheTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void testNamesWithCommasAndSpaces() throws Exception {
+        FilePath cacheDir = new FilePath(new File(dir, "workspace/" + ProvarMetadataCache.CACHE_FOLDER));
+        cacheDir.child("Admin/Account, Contact.json").write("accounts", "UTF-8");
+        cacheDir.child("Admin/Custom Object.xml").write("custom", "UTF-8");
+        cacheDir.child("Admin/Plain.xml").write("plain", "UTF-8");
+        ProvarMetadataCache cache = new ProvarMetadataCache(new FilePath(new File(dir, "store")), "ProvarProject", "QA");
+        cache.snapshot(cacheDir, TaskListener.NULL);
+
+        FilePath fresh = new FilePath(new File(dir, "other/" + ProvarMetadataCache.CACHE_FOLDER));
+        assertTrue(cache.restore(fresh, TaskListener.NULL));
+        assertEquals("accounts", fresh.child("Admin/Account, Contact.json").readToString());
+        assertEquals("custom", fresh.child("Admin/Custom Object.xml").readToString());
+        assertEquals("plain", fresh.child("Admin/Plain.xml").readToString());
+    }
+
+    @Test
+    void testSweep() throws Exception {
+        FilePath cacheDir = new FilePath(new File(dir, "workspace/" + ProvarMetadataCache.CACHE_FOLDER));
+        cacheDir.child("Admin/Account.json").write("accounts", "UTF-8");
+        File store = new File(dir, "store");
+        new ProvarMetadataCache(new FilePath(store), "ProvarProject", "QA").snapshot(cacheDir, TaskListener.NULL);
+        ProvarMetadataCache used = new ProvarMetadataCache(new FilePath(store), "ProvarProject", "UAT");
+        used.snapshot(cacheDir, TaskListener.NULL);
+        long old = System.currentTimeMillis() - ProvarMetadataCache.MAX_AGE - 60_000L;
+        for (File entry : store.listFiles()) {
+            assertTrue(new File(entry, "manifest.properties").setLastModified(old));
+        }
+
+        // restoring marks the snapshot as used
+        assertTrue(used.restore(new FilePath(new File(dir, "other/" + ProvarMetadataCache.CACHE_FOLDER)), TaskListener.NULL));
+        assertEquals(1, ProvarMetadataCache.sweep(store, System.currentTimeMillis() - ProvarMetadataCache.MAX_AGE));
+        assertEquals(1, store.listFiles().length);
+        assertTrue(store.listFiles()[0].getName().startsWith("UAT-"));
+    }
+}
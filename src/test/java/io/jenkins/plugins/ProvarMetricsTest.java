@@ -0,0 +1,57 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import org.junit.jupiter.api.Test;
+
+import static io.jenkins.plugins.ProvarMetrics.Counter.CompileCacheHits;
+import static io.jenkins.plugins.ProvarMetrics.Counter.Tests;
+import static io.jenkins.plugins.ProvarMetrics.Phase.Compile;
+import static io.jenkins.plugins.ProvarMetrics.Phase.TestExecution;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProvarMetricsTest {
+
+    @Test
+    void testAdd() {
+        ProvarMetrics step = new ProvarMetrics();
+        step.add(Compile, 1500);
+        step.add(Compile, 500);
+        step.count(Tests, 12);
+        step.count(CompileCacheHits, 1);
+        step.time(TestExecution, System.currentTimeMillis() - 1000);
+        assertEquals(2000, step.getPhase(Compile));
+        assertTrue(step.getPhase(TestExecution) >= 1000);
+
+        ProvarMetrics total = new ProvarMetrics();
+        total.add(step);
+        total.add(step);
+        assertEquals(4000, total.getPhase(Compile));
+        assertEquals(24, total.getCounter(Tests));
+        assertEquals(2, total.getCounter(CompileCacheHits));
+        assertEquals(0, total.getCounter(ProvarMetrics.Counter.FailedTests));
+        // phases are listed in the order they were first recorded
+        assertEquals("[Compile, TestExecution]", total.getPhases().keySet().toString());
+    }
+}
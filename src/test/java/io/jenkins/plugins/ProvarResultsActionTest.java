@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import hudson.Launcher;
+import hudson.matrix.AxisList;
+import hudson.matrix.MatrixAggregatable;
+import hudson.matrix.MatrixAggregator;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixProject;
+import hudson.matrix.TextAxis;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@WithJenkins
+class ProvarResultsActionTest {
+
+    private JenkinsRule jr;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        jr = rule;
+    }
+
+    @Test
+    void testShardTimingsMerged() throws Exception {
+        MatrixProject project = jr.createProject(MatrixProject.class);
+        project.setAxes(new AxisList(new TextAxis("PROVAR_SHARD", "1", "2")));
+        project.getBuildersList().add(new ShardBuilder());
+
+        jr.buildAndAssertSuccess(project);
+        MatrixBuild second = jr.buildAndAssertSuccess(project);
+
+        // both shards started from the same history, each updated its own test case
+        Map<String, Long> durations = second.getAction(ProvarTestTimings.class).getDurations();
+        assertEquals(15_000L, durations.get("Accounts/Create Account"));
+        assertEquals(30_000L, durations.get("Leads/Create Account"));
+    }
+
+    /**
+     * Records one test case per shard, twice as long in every build, with the same name in different folders.
+     */
+    public static final class ShardBuilder extends TestBuilder implements MatrixAggregatable {
+
+        @Override
+        public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException {
+            String shard = build.getBuildVariables().get("PROVAR_SHARD");
+            long duration = build.getNumber() * ("1".equals(shard) ? 10_000L : 20_000L);
+            String folder = "1".equals(shard) ? "Accounts" : "Leads";
+            ProvarTestTimings.of(build).record(Collections.singletonList(new ProvarTestResult("Create Account",
+                    folder + "/Create Account", ProvarTestResult.Status.Passed, duration)));
+            return true;
+        }
+
+        @Override
+        public MatrixAggregator createAggregator(MatrixBuild build, Launcher launcher, BuildListener listener) {
+            return new ProvarResultsAction.Aggregator(build, launcher, listener);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Parsing the JUnit reports of a Results folder, done on every poll of {@link ProvarResultsWatcher} for the reports that changed.
+ */
+@JmhBenchmark
+public class ProvarResultsParserBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Report {
+        @Param({"50", "1000"})
+        int testCases;
+        byte[] xml;
+
+        @Setup
+        public void setup() {
+            StringBuilder report = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                    .append("<testsuite name=\"Regression\" tests=\"").append(testCases).append("\">\n");
+            for (int i = 0; i < testCases; i++) {
+                report.append("  <testcase name=\"Test Case ").append(i).append(".testcase\" classname=\"Folder ").append(i % 20)
+                        .append("\" time=\"").append(i % 90).append(".25\">\n");
+                if (i % 10 == 0) {
+                    report.append("    <failure message=\"Assertion failed\">Expected Qualified but was Working\n")
+                            .append("      at Assert Status (Convert Lead.testcase:12)</failure>\n");
+                }
+                report.append("    <system-out>Executing step 1: UI Action on Account Edit page</system-out>\n")
+                        .append("  </testcase>\n");
+            }
+            xml = report.append("</testsuite>\n").toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public List<ProvarTestResult> parse(Report state) throws IOException {
+        return ProvarResultsParser.parse(new ByteArrayInputStream(state.xml));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProvarResultsParserTest {
+
+    private static final String report
+            = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<testsuite name=\"Regression\" tests=\"3\" failures=\"1\">\n"
+            + "  <testcase name=\"Create Account.testcase\" classname=\"Accounts\" time=\"12.5\"/>\n"
+            + "  <testcase name=\"Convert Lead.testcase\" classname=\"Leads\" time=\"1,204.25\">\n"
+            + "    <failure message=\"Assertion failed\">Expected Qualified</failure>\n"
+            + "  </testcase>\n"
+            + "  <testcase name=\"Close Opportunity.testcase\" classname=\"Opportunities\">\n"
+            + "    <skipped/>\n"
+            + "  </testcase>\n"
+            + "</testsuite>\n";
+
+    @Test
+    void testParse() throws IOException {
+        List<ProvarTestResult> results = ProvarResultsParser.parse(new ByteArrayInputStream(report.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(3, results.size());
+        assertEquals("Create Account", results.get(0).getName());
+        assertEquals("Accounts/Create Account", results.get(0).getPath());
+        assertEquals(ProvarTestResult.Status.Passed, results.get(0).getStatus());
+        assertEquals(12_500L, results.get(0).getDuration());
+        assertEquals(ProvarTestResult.Status.Failed, results.get(1).getStatus());
+        assertEquals(1_204_250L, results.get(1).getDuration());
+        assertEquals(ProvarTestResult.Status.Skipped, results.get(2).getStatus());
+        assertEquals(0L, results.get(2).getDuration());
+    }
+
+    @Test
+    void testIncompleteReport() {
+        String partial = report.substring(0, report.indexOf("<testcase name=\"Close"));
+        assertThrows(IOException.class, () -> ProvarResultsParser.parse(new ByteArrayInputStream(partial.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    void testResultsFolders() {
+        assertTrue(ProvarResultsParser.isResultsFolder("Results"));
+        assertTrue(ProvarResultsParser.isResultsFolder("Results(12)"));
+        assertFalse(ProvarResultsParser.isResultsFolder("Reports"));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProvarResultsRetentionTest {
+
+    @TempDir
+    File antDir;
+
+    @Test
+    void testKeep() throws Exception {
+        results(4, 1000);
+        ProvarResultsRetention.Outcome outcome = new ProvarResultsRetention(2, 0, false).invoke(antDir, null);
+        assertEquals(2, outcome.getDeleted());
+        assertEquals(2000, outcome.getReclaimedBytes());
+        assertTrue(new File(antDir, "Results(3)").isDirectory());
+        assertTrue(new File(antDir, "Results(2)").isDirectory());
+        assertFalse(new File(antDir, "Results(1)").exists());
+        assertFalse(new File(antDir, "Results").exists());
+    }
+
+    @Test
+    void testCompress() throws Exception {
+        results(3, 10_000);
+        ProvarResultsRetention.Outcome outcome = new ProvarResultsRetention(1, 0, true).invoke(antDir, null);
+        assertEquals(2, outcome.getCompressed());
+        assertTrue(outcome.getReclaimedBytes() > 0);
+        assertTrue(new File(antDir, "Results(2)").isDirectory());
+        assertTrue(new File(antDir, "Results(1).zip").isFile());
+        assertTrue(new File(antDir, "Results.zip").isFile());
+
+        // archives are not compressed again, but count towards the size limit
+        outcome = new ProvarResultsRetention(1, 10_000, true).invoke(antDir, null);
+        assertEquals(0, outcome.getCompressed());
+        assertEquals(2, outcome.getDeleted());
+        assertFalse(new File(antDir, "Results.zip").exists());
+        assertTrue(new File(antDir, "Results(2)").isDirectory());
+    }
+
+    @Test
+    void testSizeLimit() throws Exception {
+        results(3, 1000);
+        ProvarResultsRetention.Outcome outcome = new ProvarResultsRetention(0, 2500, false).invoke(antDir, null);
+        assertEquals(1, outcome.getDeleted());
+        assertEquals(1000, outcome.getReclaimedBytes());
+        assertFalse(new File(antDir, "Results").exists());
+
+        // the newest folder is kept even if it is over the limit
+        outcome = new ProvarResultsRetention(0, 1, false).invoke(antDir, null);
+        assertEquals(1, outcome.getDeleted());
+        assertTrue(new File(antDir, "Results(2)").isDirectory());
+    }
+
+    /**
+     * Creates Results, Results(1)... with one file of the given size each, the last one being the newest.
+     */
+    private void results(int count, int size) throws IOException {
+        long time = System.currentTimeMillis() - count * 60_000L;
+        for (int i = 0; i < count; i++) {
+            File folder = new File(antDir, i == 0 ? "Results" : "Results(" + i + ")");
+            assertTrue(folder.mkdir());
+            Files.write(new File(folder, "Junit.xml").toPath(), new byte[size]);
+            assertTrue(folder.setLastModified(time + i * 60_000L));
+        }
+        assertTrue(new File(antDir, "Provar.log").createNewFile());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import hudson.FilePath;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.TaskListener;
+import jenkins.util.VirtualFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@WithJenkins
+class ProvarResultsStoreTest {
+
+    private JenkinsRule jr;
+
+    @TempDir
+    File antDir;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        jr = rule;
+    }
+
+    @Test
+    void testPublish() throws Exception {
+        FreeStyleProject project = jr.createFreeStyleProject();
+        write("Results/Junit.xml", "<testsuite/>");
+        write("Results/Screenshots/Create Account, step 1.png", "screenshot");
+        write("Results/Screenshots/Create Account, step 2.png", "screenshot");
+        FreeStyleBuild first = jr.buildAndAssertSuccess(project);
+        ProvarResultsStore.publish(first, new FilePath(antDir), 0, "provar", TaskListener.NULL);
+
+        // identical screenshots are stored once
+        assertEquals(2, blobs(project));
+        VirtualFile screenshots = ProvarResultsFolderAction.of(first).root().child("provar").child("Results").child("Screenshots");
+        assertTrue(screenshots.isDirectory());
+        assertEquals(2, screenshots.list().length);
+        try (InputStream in = screenshots.child("Create Account, step 2.png").open()) {
+            assertEquals("screenshot", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        // the next build only adds the changed report
+        write("Results/Junit.xml", "<testsuite tests=\"1\"/>");
+        FreeStyleBuild second = jr.buildAndAssertSuccess(project);
+        ProvarResultsStore.publish(second, new FilePath(antDir), 0, "provar", TaskListener.NULL);
+        assertEquals(3, blobs(project));
+
+        first.delete();
+        assertEquals(1, ProvarResultsStore.of(project).sweep(project.getBuildDir()));
+        assertEquals(2, blobs(project));
+        assertTrue(ProvarResultsFolderAction.of(second).root().child("provar/Results/Junit.xml").isFile());
+    }
+
+    @Test
+    void testOlderFoldersSkipped() throws Exception {
+        write("Results(1)/Junit.xml", "<testsuite/>");
+        assertTrue(new File(antDir, "Results(1)").setLastModified(1000));
+        write("Results(2)/Junit.xml", "<testsuite/>");
+        write("Other/notes.txt", "not a Results folder");
+        assertEquals(1, new FilePath(antDir).act(new ProvarResultsStore.Checksums(2000)).size());
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(antDir, path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.writeString(file.toPath(), content);
+    }
+
+    private static int blobs(FreeStyleProject project) {
+        int n = 0;
+        File store = new File(project.getRootDir(), ProvarResultsStore.STORE);
+        for (File prefix : Objects.requireNonNull(store.listFiles(File::isDirectory))) {
+            if (prefix.getName().length() == 2) {
+                n += Objects.requireNonNull(prefix.listFiles()).length;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ProvarRunnerTest {
+
+    @Test
+    void testDaemonJar() throws IOException {
+        Set<String> entries = new HashSet<>();
+        try (JarInputStream jar = new JarInputStream(new ByteArrayInputStream(ProvarRunner.daemonJar()))) {
+            for (JarEntry entry = jar.getNextJarEntry(); entry != null; entry = jar.getNextJarEntry()) {
+                entries.add(entry.getName());
+            }
+        }
+        assertEquals(Set.of("io/jenkins/plugins/ProvarRunnerDaemon.class", "io/jenkins/plugins/ProvarRunnerDaemon$Frames.class"), entries);
+    }
+
+    @Test
+    void testOwnerOnly(@TempDir Path root) throws IOException {
+        assumeTrue(root.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        Path dir = root.resolve("provar-runner").resolve("key");
+        ProvarRunner.secureDirectory(dir);
+        assertEquals(PosixFilePermissions.fromString("rwx------"), Files.getPosixFilePermissions(dir));
+
+        // an existing directory is restricted to the owner
+        Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwxrwxrwx"));
+        ProvarRunner.secureDirectory(dir);
+        assertEquals(PosixFilePermissions.fromString("rwx------"), Files.getPosixFilePermissions(dir));
+
+        Path jar = dir.resolve("runner.jar");
+        ProvarRunner.writeOwnerOnly(jar, new byte[] {1, 2});
+        ProvarRunner.writeOwnerOnly(jar, new byte[] {3});
+        assertArrayEquals(new byte[] {3}, Files.readAllBytes(jar));
+        assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(jar));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count(), "no temporary files are left");
+        }
+    }
+
+    @Test
+    void testSymbolicLinkRefused(@TempDir Path root) throws IOException {
+        Path target = Files.createDirectory(root.resolve("elsewhere"));
+        Path link;
+        try {
+            link = Files.createSymbolicLink(root.resolve("provar-runner"), target);
+        } catch (UnsupportedOperationException | IOException e) {
+            assumeTrue(false, "symbolic links are not supported");
+            return;
+        }
+        assertThrows(IOException.class, () -> ProvarRunner.secureDirectory(link));
+    }
+
+    @Test
+    void testFrames() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ProvarRunnerDaemon.Frames frames = new ProvarRunnerDaemon.Frames(out);
+        frames.write("BUILD ".getBytes(StandardCharsets.UTF_8));
+        frames.write(new byte[0]);
+        frames.write("SUCCESSFUL\n".getBytes(StandardCharsets.UTF_8));
+        out.writeInt(-1);
+        out.writeInt(0);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        StringBuilder output = new StringBuilder();
+        for (int length = in.readInt(); length >= 0; length = in.readInt()) {
+            output.append(new String(in.readNBytes(length), StandardCharsets.UTF_8));
+        }
+        assertEquals("BUILD SUCCESSFUL\n", output.toString());
+        assertEquals(0, in.readInt());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2004-2010, Sun Microsystems, Inc., Kohsuke Kawaguchi, Tom Huybrechts, Yahoo! Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.jenkins.plugins;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProvarTestShardsTest {
+
+    private static final List<String> testCases = Arrays.asList(
+            "Accounts/Create Account.testcase",
+            "Accounts/Delete Account.testcase",
+            "Contacts/Create Contact.testcase",
+            "Leads/Convert Lead.testcase",
+            "Opportunities/Close Opportunity.testcase");
+
+    @Test
+    void testShardsCoverEveryTestCaseOnce() {
+        int count = 3;
+        Set<String> seen = new HashSet<>();
+        List<String> all = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            List<String> shard = ProvarTestShards.shard(testCases, count, i);
+            assertTrue(shard.size() >= testCases.size() / count);
+            seen.addAll(shard);
+            all.addAll(shard);
+        }
+        assertEquals(testCases.size(), all.size());
+        assertEquals(new HashSet<>(testCases), seen);
+    }
+
+    @Test
+    void testShardsBalancedByDuration() {
+        Map<String, Long> durations = new HashMap<>();
+        durations.put("Convert Lead", 600_000L);
+        durations.put("Create Account", 100_000L);
+        durations.put("Delete Account", 100_000L);
+        durations.put("Create Contact", 100_000L);
+        durations.put("Close Opportunity", 100_000L);
+        List<String> first = ProvarTestShards.shard(testCases, 2, 1, durations);
+        List<String> second = ProvarTestShards.shard(testCases, 2, 2, durations);
+        assertEquals(Collections.singletonList("Leads/Convert Lead.testcase"), first);
+        assertEquals(4, second.size());
+        assertEquals(600_000L, ProvarTestShards.estimate(first, durations));
+        assertEquals(400_000L, ProvarTestShards.estimate(second, durations));
+    }
+
+    @Test
+    void testUnknownTestCasesUseMedianDuration() {
+        Map<String, Long> durations = new HashMap<>();
+        durations.put("Create Account", 10_000L);
+        durations.put("Delete Account", 20_000L);
+        durations.put("Convert Lead", 30_000L);
+        assertEquals(20_000L, ProvarTestTimings.defaultDuration(durations));
+        assertEquals(ProvarTestTimings.DEFAULT_DURATION, ProvarTestTimings.defaultDuration(Collections.emptyMap()));
+        assertEquals(20_000L, ProvarTestShards.estimate(Collections.singletonList("Contacts/Create Contact.testcase"), durations));
+    }
+
+    @Test
+    void testDurationsByPath() {
+        Map<String, Long> durations = new HashMap<>();
+        durations.put("Regression/Accounts/Create Account", 600_000L);
+        durations.put("Regression/Contacts/Create Account", 100_000L);
+        durations.put("Smoke/Accounts/Create Account", 1_000L);
+        Map<String, Long> below = ProvarTestTimings.below(durations, "Regression");
+        assertEquals(600_000L, ProvarTestShards.estimate(Collections.singletonList("Accounts/Create Account.testcase"), below));
+        assertEquals(100_000L, ProvarTestShards.estimate(Collections.singletonList("Contacts/Create Account.testcase"), below));
+    }
+
+    @Test
+    void testInvalidShard() {
+        assertThrows(IllegalArgumentException.class, () -> ProvarTestShards.shard(testCases, 3, 0));
+        assertThrows(IllegalArgumentException.class, () -> ProvarTestShards.shard(testCases, 3, 4));
+    }
+
+    @Test
+    void testIncludes() {
+        assertEquals("**\n", ProvarTestShards.includeAll());
+        assertEquals("a.testcase\nb/c.testcase\n", ProvarTestShards.includes(Arrays.asList("a.testcase", "b/c.testcase")));
+    }
+}